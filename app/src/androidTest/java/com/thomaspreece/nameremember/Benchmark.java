@@ -0,0 +1,13 @@
+package com.thomaspreece.nameremember;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks tests that time things rather than check them. app/build.gradle leaves them out of
+// connectedAndroidTest unless it is run with -Pbenchmark, which runs only them.
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Benchmark {
+}
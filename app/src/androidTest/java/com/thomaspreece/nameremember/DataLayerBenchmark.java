@@ -0,0 +1,267 @@
+package com.thomaspreece.nameremember;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Times NRSQLiteHelper against 1k, 10k and 100k synthetic persons on the device's own SQLite.
+// Each dataset is seeded once into a template database in the cache directory and kept for later runs,
+// every operation then runs on a fresh copy of it that is deleted afterwards, so no operation sees what
+// another one wrote. Only runs with ./gradlew connectedAndroidTest -Pbenchmark.
+// Results are logged under the "Benchmark" tag, one line per operation and size:
+//   adb logcat -s Benchmark
+@Benchmark
+public class DataLayerBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "Benchmark";
+    private static final int[] SIZES = {1000, 10000, 100000};
+    private static final long SEED = 42;
+    private static final int SEED_BATCH = 1000;
+    // runs before timing starts, so caches and compiled statements are warm
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 10;
+    // tags on a person in the create and update benchmarks
+    private static final int MANY_TAGS = 40;
+    // rows per page, as PagedPersonSource reads them
+    private static final int PAGE_SIZE = 50;
+    // persons per insertImportBatch, as ContactImporter hands them over
+    private static final int IMPORT_BATCH = ContactImporter.DEFAULT_BATCH_SIZE;
+
+    private abstract static class Operation {
+        // Untimed set up on the fresh copy
+        void prepare(NRSQLiteHelper db) {}
+        abstract void run(NRSQLiteHelper db);
+    }
+
+    public void testFirstPage() throws IOException {
+        for (int size : SIZES) {
+            time("getPersonRowsPage first", size, new Operation() {
+                @Override
+                void run(NRSQLiteHelper db) {
+                    db.getPersonRowsPage(null, 0, PAGE_SIZE);
+                }
+            });
+        }
+    }
+
+    public void testNextPage() throws IOException {
+        for (int size : SIZES) {
+            time("getPersonRowsPage next from middle", size, new Operation() {
+                private PersonRow after;
+
+                @Override
+                void prepare(NRSQLiteHelper db) {
+                    List<PersonRow> before = db.getPersonRowsPage(null, db.getPersonCount() / 2 - PAGE_SIZE, PAGE_SIZE);
+                    after = before.get(before.size() - 1);
+                }
+
+                @Override
+                void run(NRSQLiteHelper db) {
+                    // what scrolling on reads, seeking past the end of the page before
+                    db.getPersonRowsPage(after, 0, PAGE_SIZE);
+                }
+            });
+        }
+    }
+
+    public void testJumpToMiddlePage() throws IOException {
+        for (int size : SIZES) {
+            time("getPersonRowsPage jump to middle", size, new Operation() {
+                @Override
+                void run(NRSQLiteHelper db) {
+                    // what a fast scroll reads when no page before it was loaded
+                    db.getPersonRowsPage(null, db.getPersonCount() / 2, PAGE_SIZE);
+                }
+            });
+        }
+    }
+
+    public void testSearchRecent() throws IOException {
+        search(0, "this year");
+    }
+
+    public void testSearchName() throws IOException {
+        search(1, "Jo");
+    }
+
+    public void testSearchKeyword() throws IOException {
+        search(2, new SyntheticPersons(SEED).keyword(0));
+    }
+
+    public void testSearchDescription() throws IOException {
+        search(3, SyntheticPersons.WORDS[0]);
+    }
+
+    public void testSearchInterests() throws IOException {
+        search(4, SyntheticPersons.WORDS[1]);
+    }
+
+    public void testImportBatch() throws IOException {
+        for (int size : SIZES) {
+            final SyntheticPersons generator = new SyntheticPersons(SEED + size);
+            time("insertImportBatch " + IMPORT_BATCH, size, new Operation() {
+                private long records = 0;
+
+                @Override
+                void run(NRSQLiteHelper db) {
+                    db.insertImportBatch(generator.next(IMPORT_BATCH), "benchmark import", records += IMPORT_BATCH);
+                }
+            });
+        }
+    }
+
+    public void testCreatePersonWithManyTags() throws IOException {
+        for (int size : SIZES) {
+            final SyntheticPersons generator = new SyntheticPersons(SEED + size);
+            time("createPerson " + MANY_TAGS + " tags", size, new Operation() {
+                @Override
+                void run(NRSQLiteHelper db) {
+                    Person person = generator.next();
+                    person.setKeywords(new ArrayList<>(Arrays.asList(generator.tags(MANY_TAGS))));
+                    db.createPerson(person);
+                }
+            });
+        }
+    }
+
+    public void testUpdatePersonWithManyTags() throws IOException {
+        for (int size : SIZES) {
+            final SyntheticPersons generator = new SyntheticPersons(SEED + size);
+            time("updatePerson " + MANY_TAGS + " tags", size, new Operation() {
+                private Person person;
+
+                @Override
+                void prepare(NRSQLiteHelper db) {
+                    person = db.readPerson(db.getPersonCount() / 2);
+                }
+
+                @Override
+                void run(NRSQLiteHelper db) {
+                    // a fresh set each run so links are both removed and added, and the old keywords
+                    // that lose their last person are cleaned up
+                    person.setKeywords(new ArrayList<>(Arrays.asList(generator.tags(MANY_TAGS))));
+                    db.updatePerson(person);
+                }
+            });
+        }
+    }
+
+    public void testDeletePerson() throws IOException {
+        for (int size : SIZES) {
+            time("deletePerson", size, new Operation() {
+                private int personId;
+
+                @Override
+                void prepare(NRSQLiteHelper db) {
+                    personId = db.getPersonCount() / 2;
+                }
+
+                @Override
+                void run(NRSQLiteHelper db) {
+                    // a different person each run, with the keywords only they used cleaned up
+                    db.deletePerson(personId++);
+                }
+            });
+        }
+    }
+
+    private void search(final int searchType, final String term) throws IOException {
+        for (int size : SIZES) {
+            time("getSearchRows type " + searchType + " '" + term + "'", size, new Operation() {
+                @Override
+                void run(NRSQLiteHelper db) {
+                    db.getSearchRows(term, searchType, null);
+                }
+            });
+        }
+    }
+
+    // The template database for a dataset, seeding it unless an earlier run already did
+    private File template(int size) {
+        File template = new File(getContext().getCacheDir(), "benchmark_" + size + "_" + SEED + ".db");
+        NRSQLiteHelper db = new NRSQLiteHelper(getContext(), template.getPath());
+        try {
+            if (db.getPersonCount() == size) {
+                return template;
+            }
+        } finally {
+            db.close();
+        }
+        deleteDatabase(template);
+        db = new NRSQLiteHelper(getContext(), template.getPath());
+        try {
+            SyntheticPersons generator = new SyntheticPersons(SEED);
+            long start = System.nanoTime();
+            for (int seeded = 0; seeded < size; seeded += SEED_BATCH) {
+                db.insertImportBatch(generator.next(Math.min(SEED_BATCH, size - seeded)), "benchmark", seeded);
+            }
+            db.finishImport("benchmark");
+            Log.i(TAG, String.format(Locale.UK, "seeded %d persons in %d ms", size, (System.nanoTime() - start) / 1000000));
+        } finally {
+            // closing checkpoints the log, so the template is a single file
+            db.close();
+        }
+        return template;
+    }
+
+    // Run operation on a fresh copy of the dataset, untimed warm up runs first
+    private void time(String name, int size, Operation operation) throws IOException {
+        File copy = new File(getContext().getCacheDir(), "benchmark_run.db");
+        deleteDatabase(copy);
+        copyFile(template(size), copy);
+        NRSQLiteHelper db = new NRSQLiteHelper(getContext(), copy.getPath());
+        long[] runs = new long[TIMED_RUNS];
+        try {
+            operation.prepare(db);
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                operation.run(db);
+            }
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = System.nanoTime();
+                operation.run(db);
+                runs[i] = System.nanoTime() - start;
+            }
+        } finally {
+            db.close();
+            deleteDatabase(copy);
+        }
+        Arrays.sort(runs);
+        Log.i(TAG, String.format(Locale.UK, "%s n=%d: median %.3f ms, min %.3f ms, max %.3f ms",
+                name, size, runs[TIMED_RUNS / 2] / 1e6, runs[0] / 1e6, runs[TIMED_RUNS - 1] / 1e6));
+    }
+
+    private static void deleteDatabase(File database) {
+        database.delete();
+        new File(database.getPath() + "-wal").delete();
+        new File(database.getPath() + "-shm").delete();
+        new File(database.getPath() + "-journal").delete();
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to);
+            try {
+                FileChannel source = in.getChannel();
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position, out.getChannel());
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
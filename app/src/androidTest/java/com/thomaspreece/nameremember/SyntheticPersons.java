@@ -0,0 +1,103 @@
+package com.thomaspreece.nameremember;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+// Generates persons shaped like a real address book for the benchmarks. Names repeat the way common
+// names do, and keywords follow a Zipf distribution: a few tags like "work" are on most people while
+// most tags are on a handful. The same seed always gives the same persons.
+public class SyntheticPersons {
+
+    static final String[] FIRST_NAMES = {"James", "John", "Robert", "Michael", "William", "David", "Richard", "Joseph", "Thomas", "Charles",
+            "Mary", "Patricia", "Jennifer", "Linda", "Elizabeth", "Barbara", "Susan", "Jessica", "Sarah", "Karen",
+            "Daniel", "Matthew", "Anthony", "Mark", "Paul", "Steven", "Andrew", "Joshua", "Kevin", "Brian",
+            "Nancy", "Lisa", "Betty", "Margaret", "Sandra", "Ashley", "Emily", "Donna", "Michelle", "Amanda"};
+    static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Wilson", "Anderson", "Taylor", "Thomas", "Moore", "Jackson", "Martin", "Lee",
+            "Thompson", "White", "Harris", "Clark", "Lewis", "Robinson", "Walker", "Young", "Allen", "King",
+            "Wright", "Scott", "Green", "Baker", "Adams", "Nelson", "Hill", "Campbell", "Mitchell", "Roberts"};
+    static final String[] WORDS = {"work", "school", "football", "conference", "neighbour", "gym", "church", "university", "party", "wedding",
+            "climbing", "music", "guitar", "cooking", "travel", "photography", "chess", "running", "cycling", "london",
+            "manchester", "friend", "family", "client", "supplier", "doctor", "teacher", "engineer", "designer", "manager",
+            "book", "club", "hiking", "swimming", "painting", "theatre", "film", "coffee", "dog", "garden"};
+
+    // distinct keywords to draw from, most used first
+    private static final int KEYWORD_VOCABULARY = 2000;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private final Random random;
+    private final String[] keywords = new String[KEYWORD_VOCABULARY];
+    // cumulative Zipf weights for picking a keyword by rank
+    private final double[] keywordWeights = new double[KEYWORD_VOCABULARY];
+    private final long now = System.currentTimeMillis();
+
+    public SyntheticPersons(long seed) {
+        this.random = new Random(seed);
+        double total = 0;
+        for (int rank = 0; rank < KEYWORD_VOCABULARY; rank++) {
+            // the plain words are the popular tags, after those come combinations like "football 12"
+            keywords[rank] = rank < WORDS.length ? WORDS[rank] : WORDS[rank % WORDS.length] + " " + (rank / WORDS.length);
+            total += 1.0 / (rank + 1);
+            keywordWeights[rank] = total;
+        }
+        for (int rank = 0; rank < KEYWORD_VOCABULARY; rank++) {
+            keywordWeights[rank] /= total;
+        }
+    }
+
+    // The keyword at a popularity rank, 0 being on the most persons
+    public String keyword(int rank) {
+        return keywords[rank];
+    }
+
+    public List<Person> next(int count) {
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            persons.add(next());
+        }
+        return persons;
+    }
+
+    public Person next() {
+        Person person = new Person(FIRST_NAMES[skewed(FIRST_NAMES.length)], LAST_NAMES[skewed(LAST_NAMES.length)],
+                sentence(4 + random.nextInt(12)), sentence(1 + random.nextInt(3)));
+        // met over the last five years
+        person.setDate(new Date(now - (long) (random.nextDouble() * 5 * 365 * DAY_MS)));
+        // mostly two to four tags, occasionally many
+        int tags = Math.min(random.nextInt(4) + (random.nextInt(10) == 0 ? random.nextInt(20) : 0) + 1, 30);
+        person.setKeywords(new ArrayList<>(Arrays.asList(tags(tags))));
+        return person;
+    }
+
+    // count distinct keywords drawn by popularity
+    public String[] tags(int count) {
+        List<String> tags = new ArrayList<>(count);
+        while (tags.size() < count) {
+            int rank = Arrays.binarySearch(keywordWeights, random.nextDouble());
+            String keyword = keywords[rank < 0 ? Math.min(-rank - 1, KEYWORD_VOCABULARY - 1) : rank];
+            if (!tags.contains(keyword)) {
+                tags.add(keyword);
+            }
+        }
+        return tags.toArray(new String[count]);
+    }
+
+    private String sentence(int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[skewed(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+
+    // earlier entries are picked more often, like common names
+    private int skewed(int length) {
+        return Math.min(random.nextInt(length), random.nextInt(length));
+    }
+}
@@ -0,0 +1,78 @@
+package com.thomaspreece.nameremember;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Merges exported backups into the database, or replaces the database with a backup and the deltas
+// taken after it, on a background thread with NRSQLiteHelper.mergeBackup and restoreBackup.
+// The outcome is reported on the main thread.
+public class BackupImporter {
+
+    public interface Listener {
+        void onImportFinished(File backup, int imported);
+        void onRestoreFinished(File backup, int deltasApplied);
+        void onImportFailed(File backup, RuntimeException e);
+    }
+
+    private final NRSQLiteHelper db;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile Listener listener;
+
+    public BackupImporter(NRSQLiteHelper db, Listener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    public void importBackup(File backup) {
+        run(backup, null);
+    }
+
+    public void restoreBackup(File backup, List<File> deltas) {
+        run(backup, deltas);
+    }
+
+    private void run(final File backup, final List<File> deltas) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final int imported = deltas == null ? db.mergeBackup(backup) : db.restoreBackup(backup, deltas);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener == null) {
+                                return;
+                            }
+                            if (deltas == null) {
+                                listener.onImportFinished(backup, imported);
+                            } else {
+                                listener.onRestoreFinished(backup, imported);
+                            }
+                        }
+                    });
+                } catch (final RuntimeException e) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onImportFailed(backup, e);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Stop reporting to the listener, an import already running still finishes
+    public void shutdown() {
+        listener = null;
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,254 @@
+package com.thomaspreece.nameremember;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Exports persons as CSV or JSON on a background thread. Rows are written straight from a cursor over
+// persons joined with their keywords, so only one person is held in memory whatever the database size.
+// The CSV header matches what CsvContactReader reads back.
+public class ContactExporter {
+
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSON = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // least time between progress updates
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private final NRSQLiteHelper db;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile DatabaseExporter.Listener listener;
+    private long lastProgress;
+
+    public ContactExporter(NRSQLiteHelper db, DatabaseExporter.Listener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    public void export(final File file, final int format) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(file, format);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onExportFinished(file, null);
+                            }
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    file.delete();
+                    final IOException failure = e instanceof IOException ? (IOException) e : new IOException("Export failed", e);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onExportFailed(file, failure);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Stop reporting to the listener, an export already running still finishes
+    public void shutdown() {
+        listener = null;
+        executor.shutdown();
+    }
+
+    private void write(File file, int format) throws IOException {
+        long total = db.getPersonCount();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), BUFFER_SIZE);
+        Cursor cursor = db.queryPersonsWithKeywords();
+        try {
+            RowWriter rows;
+            switch (format) {
+                case FORMAT_CSV:
+                    rows = new CsvRowWriter(out);
+                    break;
+                case FORMAT_JSON:
+                    rows = new JsonRowWriter(out);
+                    break;
+                default:
+                    throw new RuntimeException("Invalid export format: " + format);
+            }
+
+            // rows come ordered by person, one per keyword, so collect keywords until the id changes
+            long done = 0;
+            List<String> keywords = new ArrayList<>();
+            boolean more = cursor.moveToFirst();
+            while (more) {
+                int id = cursor.getInt(0);
+                String firstName = cursor.getString(1);
+                String lastName = cursor.getString(2);
+                String description = cursor.getString(3);
+                String interests = cursor.getString(4);
+                Long date = cursor.isNull(5) ? null : cursor.getLong(5);
+                keywords.clear();
+                do {
+                    if (!cursor.isNull(6)) {
+                        keywords.add(cursor.getString(6));
+                    }
+                    more = cursor.moveToNext();
+                } while (more && cursor.getInt(0) == id);
+                Collections.sort(keywords);
+
+                rows.write(id, firstName, lastName, description, interests, date, keywords);
+                progress(++done, total);
+            }
+            rows.finish();
+        } finally {
+            cursor.close();
+            out.close();
+        }
+    }
+
+    private void progress(final long done, final long total) {
+        long now = System.currentTimeMillis();
+        if (done < total && now - lastProgress < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgress = now;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onExportProgress(done, total);
+                }
+            }
+        });
+    }
+
+    interface RowWriter {
+        void write(int id, String firstName, String lastName, String description, String interests, Long date, List<String> keywords) throws IOException;
+        void finish() throws IOException;
+    }
+
+    // package-private so the tests can read its output back with CsvContactReader
+    static class CsvRowWriter implements RowWriter {
+        private final Writer out;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
+        private final Date rowDate = new Date();
+
+        CsvRowWriter(Writer out) throws IOException {
+            this.out = out;
+            out.write("First Name,Last Name,Description,Interests,Date,Keywords\r\n");
+        }
+
+        @Override
+        public void write(int id, String firstName, String lastName, String description, String interests, Long date, List<String> keywords) throws IOException {
+            field(firstName);
+            out.write(',');
+            field(lastName);
+            out.write(',');
+            field(description);
+            out.write(',');
+            field(interests);
+            out.write(',');
+            if (date != null) {
+                rowDate.setTime(date);
+                field(dateFormat.format(rowDate));
+            }
+            out.write(',');
+            field(joinKeywords(keywords));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        // Separated by semicolons, with the characters CsvContactReader.splitKeywords splits on escaped
+        // so each keyword reads back whole
+        private static String joinKeywords(List<String> keywords) {
+            StringBuilder joined = new StringBuilder();
+            for (String keyword : keywords) {
+                if (joined.length() != 0) {
+                    joined.append(';');
+                }
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = keyword.charAt(i);
+                    if (c == '\\' || c == ',' || c == ';' || c == ':') {
+                        joined.append('\\');
+                    }
+                    joined.append(c);
+                }
+            }
+            return joined.toString();
+        }
+
+        // quoted only when it has to be
+        private void field(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    private static class JsonRowWriter implements RowWriter {
+        private final JsonWriter json;
+
+        JsonRowWriter(Writer out) throws IOException {
+            this.json = new JsonWriter(out);
+            json.beginArray();
+        }
+
+        @Override
+        public void write(int id, String firstName, String lastName, String description, String interests, Long date, List<String> keywords) throws IOException {
+            json.beginObject();
+            json.name("id").value(id);
+            json.name("firstName").value(firstName);
+            json.name("lastName").value(lastName);
+            json.name("description").value(description);
+            json.name("interests").value(interests);
+            json.name("date").value(date);
+            json.name("keywords").beginArray();
+            for (String keyword : keywords) {
+                json.value(keyword);
+            }
+            json.endArray();
+            json.endObject();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.endArray();
+            json.flush();
+        }
+    }
+}
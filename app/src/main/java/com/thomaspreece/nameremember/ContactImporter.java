@@ -0,0 +1,184 @@
+package com.thomaspreece.nameremember;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Imports CSV and vCard contact files on a background thread. Records are parsed one at a time and
+// written in batches, each batch one transaction that also records how far the import got. Importing
+// a file again after an interruption skips the records already committed.
+public class ContactImporter {
+
+    public interface Listener {
+        void onContactsProgress(long records, long bytesRead, long bytesTotal, long recordsPerSecond);
+        void onContactsImported(File file, long imported);
+        void onContactsFailed(File file, Exception e);
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    // least time between progress updates
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final NRSQLiteHelper db;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile Listener listener;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    public ContactImporter(NRSQLiteHelper db, Listener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    public static boolean canImport(File file) {
+        String name = file.getName().toLowerCase(Locale.UK);
+        return name.endsWith(".csv") || name.endsWith(".vcf") || name.endsWith(".vcard");
+    }
+
+    // Persons per transaction, larger batches are faster but lose more work to an interruption
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void importContacts(final File file) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final long imported = importFile(file);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onContactsImported(file, imported);
+                            }
+                        }
+                    });
+                } catch (final IOException | RuntimeException e) {
+                    db.stopImport();
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onContactsFailed(file, e);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Stop reporting to the listener, an import already running still finishes
+    public void shutdown() {
+        listener = null;
+        executor.shutdown();
+    }
+
+    private long importFile(File file) throws IOException {
+        // a changed file starts again from the beginning
+        String source = file.getPath() + "|" + file.length() + "|" + file.lastModified();
+        long committed = db.getImportProgress(source);
+        long bytesTotal = file.length();
+        int batchSize = this.batchSize;
+
+        CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+        ContactReader reader = open(file, new BufferedReader(new InputStreamReader(counter, "UTF-8")));
+        try {
+            long records = 0;
+            while (records < committed && reader.read() != null) {
+                records++;
+            }
+
+            long start = System.currentTimeMillis();
+            long lastProgress = 0;
+            List<Person> batch = new ArrayList<>(batchSize);
+            Person person;
+            while ((person = reader.read()) != null) {
+                batch.add(person);
+                records++;
+                if (batch.size() == batchSize) {
+                    db.insertImportBatch(batch, source, records);
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    lastProgress = now;
+                    progress(records, counter.count, bytesTotal, (records - committed) * 1000 / Math.max(1, now - start));
+                }
+            }
+            if (!batch.isEmpty()) {
+                db.insertImportBatch(batch, source, records);
+            }
+            db.finishImport(source);
+            return records - committed;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static ContactReader open(File file, BufferedReader in) throws IOException {
+        try {
+            if (file.getName().toLowerCase(Locale.UK).endsWith(".csv")) {
+                return new CsvContactReader(in);
+            }
+            return new VCardContactReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private void progress(final long records, final long bytesRead, final long bytesTotal, final long recordsPerSecond) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onContactsProgress(records, bytesRead, bytesTotal, recordsPerSecond);
+                }
+            }
+        });
+    }
+
+    // Bytes read so far, for progress through the file
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.thomaspreece.nameremember;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Reads persons one record at a time from a contacts file, holding only the current record in memory
+public interface ContactReader extends Closeable {
+    // The next person, null at the end of the file
+    Person read() throws IOException;
+}
@@ -0,0 +1,265 @@
+package com.thomaspreece.nameremember;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Persons from a CSV file with a header row, as exported by most contact and note tools. Quoted
+// fields may hold delimiters, doubled quotes and line breaks. The delimiter is picked from the header.
+public class CsvContactReader implements ContactReader {
+
+    private static final int FIRST_NAME = 0;
+    private static final int LAST_NAME = 1;
+    private static final int FULL_NAME = 2;
+    private static final int DESCRIPTION = 3;
+    private static final int INTERESTS = 4;
+    private static final int KEYWORDS = 5;
+    private static final int DATE = 6;
+
+    // longest header line the delimiter is looked for in
+    private static final int HEADER_LOOKAHEAD = 64 * 1024;
+
+    private final BufferedReader in;
+    private final char delimiter;
+    // column of each field above, -1 when the file doesn't have it
+    private final int[] columns = {-1, -1, -1, -1, -1, -1, -1};
+    // ContactExporter's format, or just the day
+    private final SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.UK);
+
+    public CsvContactReader(BufferedReader in) throws IOException {
+        this.in = in;
+        dateTimeFormat.setLenient(false);
+        dayFormat.setLenient(false);
+        skipByteOrderMark();
+        this.delimiter = detectDelimiter();
+
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new IOException("CSV file is empty");
+        }
+        for (int i = 0; i < header.size(); i++) {
+            int field = fieldOf(header.get(i));
+            if (field != -1 && columns[field] == -1) {
+                columns[field] = i;
+            }
+        }
+        if (columns[FIRST_NAME] == -1 && columns[LAST_NAME] == -1 && columns[FULL_NAME] == -1) {
+            throw new IOException("CSV header has no name column");
+        }
+    }
+
+    @Override
+    public Person read() throws IOException {
+        List<String> record;
+        while ((record = readRecord()) != null) {
+            if (isBlank(record)) {
+                continue;
+            }
+            Person person = new Person();
+            String firstName = field(record, FIRST_NAME);
+            String lastName = field(record, LAST_NAME);
+            String fullName = field(record, FULL_NAME);
+            if (firstName.length() == 0 && lastName.length() == 0 && fullName.length() != 0) {
+                // everything up to the last word is the first name
+                int split = fullName.lastIndexOf(' ');
+                firstName = split == -1 ? fullName : fullName.substring(0, split).trim();
+                lastName = split == -1 ? "" : fullName.substring(split + 1);
+            }
+            person.setFirstName(firstName);
+            person.setLastName(lastName);
+            person.setDescription(field(record, DESCRIPTION));
+            person.setInterests(field(record, INTERESTS));
+            person.setKeywords(splitKeywords(field(record, KEYWORDS)));
+            // left unset when missing or unreadable, the import dates the person now
+            person.setDate(parseDate(field(record, DATE)));
+            return person;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // One record's fields, null at the end of the file
+    private List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean read = false;
+        int c;
+        while ((c = in.read()) != -1) {
+            read = true;
+            if (quoted) {
+                if (c == '"') {
+                    in.mark(1);
+                    if (in.read() == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        in.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                in.mark(1);
+                if (in.read() != '\n') {
+                    in.reset();
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (!read) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private String field(List<String> record, int field) {
+        int column = columns[field];
+        return column == -1 || column >= record.size() ? "" : record.get(column).trim();
+    }
+
+    // Tools separate tags with commas, semicolons or " ::: ". A backslash makes the next character
+    // part of the keyword, which is how ContactExporter writes keywords holding any of those.
+    static ArrayList<String> splitKeywords(String text) {
+        ArrayList<String> keywords = new ArrayList<>();
+        StringBuilder keyword = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            boolean end = i == text.length();
+            if (!end) {
+                char c = text.charAt(i);
+                if (c == '\\' && i + 1 < text.length()) {
+                    keyword.append(text.charAt(++i));
+                    continue;
+                } else if (c == ':' && text.startsWith(":::", i)) {
+                    i += 2;
+                    end = true;
+                } else if (c == ',' || c == ';') {
+                    end = true;
+                } else {
+                    keyword.append(c);
+                }
+            }
+            if (end) {
+                String trimmed = keyword.toString().trim();
+                if (trimmed.length() != 0) {
+                    keywords.add(trimmed);
+                }
+                keyword.setLength(0);
+            }
+        }
+        return keywords;
+    }
+
+    private Date parseDate(String text) {
+        if (text.length() == 0) {
+            return null;
+        }
+        for (SimpleDateFormat format : new SimpleDateFormat[]{dateTimeFormat, dayFormat}) {
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(text, position);
+            if (date != null && position.getIndex() == text.length()) {
+                return date;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBlank(List<String> record) {
+        for (String field : record) {
+            if (field.trim().length() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int fieldOf(String heading) {
+        String name = heading.toLowerCase(Locale.UK).replaceAll("[^a-z]", "");
+        switch (name) {
+            case "firstname":
+            case "first":
+            case "givenname":
+            case "forename":
+                return FIRST_NAME;
+            case "lastname":
+            case "last":
+            case "surname":
+            case "familyname":
+                return LAST_NAME;
+            case "name":
+            case "fullname":
+            case "displayname":
+                return FULL_NAME;
+            case "description":
+            case "desc":
+            case "notes":
+            case "note":
+                return DESCRIPTION;
+            case "interests":
+            case "hobbies":
+                return INTERESTS;
+            case "keywords":
+            case "tags":
+            case "categories":
+            case "labels":
+            case "groupmembership":
+                return KEYWORDS;
+            case "date":
+            case "met":
+            case "datemet":
+                return DATE;
+            default:
+                return -1;
+        }
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        in.mark(1);
+        if (in.read() != '\uFEFF') {
+            in.reset();
+        }
+    }
+
+    // Whichever of comma, semicolon and tab is most common in the header line
+    private char detectDelimiter() throws IOException {
+        in.mark(HEADER_LOOKAHEAD);
+        int commas = 0;
+        int semicolons = 0;
+        int tabs = 0;
+        int c;
+        for (int i = 0; i < HEADER_LOOKAHEAD && (c = in.read()) != -1 && c != '\n' && c != '\r'; i++) {
+            if (c == ',') {
+                commas++;
+            } else if (c == ';') {
+                semicolons++;
+            } else if (c == '\t') {
+                tabs++;
+            }
+        }
+        in.reset();
+        if (tabs > commas && tabs > semicolons) {
+            return '\t';
+        }
+        return semicolons > commas ? ';' : ',';
+    }
+}
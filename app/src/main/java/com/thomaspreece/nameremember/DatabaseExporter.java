@@ -0,0 +1,252 @@
+package com.thomaspreece.nameremember;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+// Exports NameDB on a background thread. A consistent copy is taken with NRSQLiteHelper.copyDatabaseFiles
+// and folded into a single database file, which is then streamed to the export file, optionally gzip
+// compressed and with a SHA-256 checksum written next to it. Progress and the outcome arrive on the main thread.
+// Once an export is written the change log is marked as backed up, so exportChanges only carries what came after.
+public class DatabaseExporter {
+
+    public interface Listener {
+        void onExportProgress(long bytesDone, long bytesTotal);
+        void onExportFinished(File file, String checksum);
+        void onExportFailed(File file, IOException e);
+    }
+
+    // exportChanges was asked for before any full backup was exported
+    public static class NoFullBackupException extends IOException {
+        NoFullBackupException() {
+            super("No full backup to take changes from");
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // least time between progress updates
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private final NRSQLiteHelper db;
+    private final File snapshot;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile Listener listener;
+    private long lastProgress;
+
+    public DatabaseExporter(Context context, NRSQLiteHelper db, Listener listener) {
+        this.db = db;
+        this.snapshot = new File(context.getCacheDir(), "export_snapshot.db");
+        this.listener = listener;
+    }
+
+    // Export to file, compress gzips it and checksum writes its SHA-256 to file.sha256
+    public void export(final File file, final boolean compress, final boolean checksum) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long seq = takeSnapshot();
+                    final String digest = write(file, compress, checksum);
+                    db.markBackedUp(seq);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onExportFinished(file, digest);
+                            }
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    // SQLiteException from the copy, the snapshot or the change log must not kill the worker
+                    file.delete();
+                    new File(file.getPath() + ".sha256").delete();
+                    try {
+                        db.abandonBackup();
+                    } catch (RuntimeException ignored) {
+                        // the next full backup abandons or continues the chain as well
+                    }
+                    final IOException error = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onExportFailed(file, error);
+                            }
+                        }
+                    });
+                } finally {
+                    deleteSnapshot();
+                }
+            }
+        });
+    }
+
+    // Export the persons and keywords changed since the last export to file, see NRSQLiteHelper.exportChanges
+    public void exportChanges(final File file) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!db.hasFullBackup()) {
+                        throw new NoFullBackupException();
+                    }
+                    db.exportChanges(file);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onExportFinished(file, null);
+                            }
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    file.delete();
+                    final IOException error = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (listener != null) {
+                                listener.onExportFailed(file, error);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Stop reporting to the listener, an export already running still finishes
+    public void shutdown() {
+        listener = null;
+        executor.shutdown();
+    }
+
+    // Returns the change log seq the snapshot includes
+    private long takeSnapshot() throws IOException {
+        deleteSnapshot();
+        long seq = db.copyDatabaseFiles(snapshot);
+        // opening replays the copied log, leaving the journal mode as DELETE makes the copy one file
+        SQLiteDatabase copy = SQLiteDatabase.openDatabase(snapshot.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            Cursor cursor = copy.rawQuery("PRAGMA journal_mode = DELETE", null);
+            cursor.moveToFirst();
+            cursor.close();
+        } finally {
+            copy.close();
+        }
+        return seq;
+    }
+
+    private void deleteSnapshot() {
+        snapshot.delete();
+        new File(snapshot.getPath() + "-wal").delete();
+        new File(snapshot.getPath() + "-shm").delete();
+        new File(snapshot.getPath() + "-journal").delete();
+    }
+
+    // Stream the snapshot to file, returning the checksum or null when not asked for
+    private String write(File file, boolean compress, boolean checksum) throws IOException {
+        FileInputStream in = new FileInputStream(snapshot);
+        try {
+            FileChannel source = in.getChannel();
+            long total = source.size();
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                if (!compress && !checksum) {
+                    // plain copy, let the channels move the bytes
+                    FileChannel target = out.getChannel();
+                    long position = 0;
+                    while (position < total) {
+                        position += source.transferTo(position, Math.min(BUFFER_SIZE * 16, total - position), target);
+                        progress(position, total);
+                    }
+                    return null;
+                }
+
+                MessageDigest digest = checksum ? sha256() : null;
+                OutputStream stream = digest != null ? new DigestOutputStream(out, digest) : out;
+                if (compress) {
+                    stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+                }
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long position = 0;
+                int length;
+                while ((length = in.read(buffer)) > 0) {
+                    stream.write(buffer, 0, length);
+                    position += length;
+                    progress(position, total);
+                }
+                stream.close();
+                if (digest == null) {
+                    return null;
+                }
+                String hex = toHex(digest.digest());
+                writeChecksum(file, hex);
+                return hex;
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void progress(final long done, final long total) {
+        long now = System.currentTimeMillis();
+        if (done < total && now - lastProgress < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgress = now;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onExportProgress(done, total);
+                }
+            }
+        });
+    }
+
+    // same format as sha256sum so the export can be checked anywhere
+    private static void writeChecksum(File file, String hex) throws IOException {
+        FileOutputStream out = new FileOutputStream(file.getPath() + ".sha256");
+        try {
+            out.write((hex + "  " + file.getName() + "\n").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.UK, "%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.thomaspreece.nameremember;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+// A half open range of meeting dates in epoch milliseconds, [from, to).
+// parse() understands the terms typed into the Recent search:
+//   today, yesterday, this/last week, this/last month, this/last year, last N days,
+//   a year (2016), a month (2016-01), a day (2016-01-22) and two of those joined by ".." (2016-01..2016-03).
+public class DateRange {
+    public final long from;
+    public final long to;
+
+    public DateRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public boolean contains(Date date) {
+        return date != null && contains(date.getTime());
+    }
+
+    public boolean contains(long time) {
+        return time >= from && time < to;
+    }
+
+    // null if the term isn't a date range
+    public static DateRange parse(String term) {
+        return parse(term, Calendar.getInstance());
+    }
+
+    public static DateRange parse(String term, Calendar now) {
+        String text = term.trim().toLowerCase(Locale.UK).replaceAll("\\s+", " ");
+        if (text.length() == 0) {
+            return null;
+        }
+
+        int separator = text.indexOf("..");
+        if (separator != -1) {
+            DateRange start = parse(text.substring(0, separator), now);
+            DateRange end = parse(text.substring(separator + 2), now);
+            if (start == null || end == null || end.to <= start.from) {
+                return null;
+            }
+            return new DateRange(start.from, end.to);
+        }
+
+        Calendar start = startOfDay(now);
+        switch (text) {
+            case "today":
+                return days(start, 0, 1);
+            case "yesterday":
+                return days(start, -1, 1);
+            case "this week":
+                start.set(Calendar.DAY_OF_WEEK, start.getFirstDayOfWeek());
+                return days(start, 0, 7);
+            case "last week":
+                start.set(Calendar.DAY_OF_WEEK, start.getFirstDayOfWeek());
+                return days(start, -7, 7);
+            case "this month":
+                start.set(Calendar.DAY_OF_MONTH, 1);
+                return months(start, 0, 1);
+            case "last month":
+                start.set(Calendar.DAY_OF_MONTH, 1);
+                return months(start, -1, 1);
+            case "this year":
+                start.set(Calendar.DAY_OF_YEAR, 1);
+                return months(start, 0, 12);
+            case "last year":
+                start.set(Calendar.DAY_OF_YEAR, 1);
+                return months(start, -12, 12);
+        }
+
+        if (text.startsWith("last ") && text.endsWith(" days")) {
+            String count = text.substring(5, text.length() - 5).trim();
+            if (count.matches("\\d{1,4}")) {
+                // includes today
+                int days = Integer.parseInt(count);
+                return days(start, 1 - days, days);
+            }
+            return null;
+        }
+
+        if (text.matches("\\d{4}")) {
+            return calendarRange(text, "yyyy", Calendar.YEAR, now);
+        } else if (text.matches("\\d{4}-\\d{1,2}")) {
+            return calendarRange(text, "yyyy-MM", Calendar.MONTH, now);
+        } else if (text.matches("\\d{4}-\\d{1,2}-\\d{1,2}")) {
+            return calendarRange(text, "yyyy-MM-dd", Calendar.DAY_OF_MONTH, now);
+        }
+        return null;
+    }
+
+    private static Calendar startOfDay(Calendar now) {
+        Calendar start = (Calendar) now.clone();
+        // recompute every field, setting DAY_OF_WEEK only moves within a week that has been computed
+        start.setTimeInMillis(now.getTimeInMillis());
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        return start;
+    }
+
+    private static DateRange days(Calendar start, int offset, int length) {
+        start.add(Calendar.DAY_OF_MONTH, offset);
+        long from = start.getTimeInMillis();
+        start.add(Calendar.DAY_OF_MONTH, length);
+        return new DateRange(from, start.getTimeInMillis());
+    }
+
+    private static DateRange months(Calendar start, int offset, int length) {
+        start.add(Calendar.MONTH, offset);
+        long from = start.getTimeInMillis();
+        start.add(Calendar.MONTH, length);
+        return new DateRange(from, start.getTimeInMillis());
+    }
+
+    // A whole year, month or day in now's time zone
+    private static DateRange calendarRange(String text, String pattern, int field, Calendar now) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.UK);
+        format.setTimeZone(now.getTimeZone());
+        format.setLenient(false);
+        ParsePosition position = new ParsePosition(0);
+        Date date = format.parse(text, position);
+        if (date == null || position.getIndex() != text.length()) {
+            return null;
+        }
+        Calendar start = (Calendar) now.clone();
+        start.setTime(date);
+        long from = start.getTimeInMillis();
+        start.add(field, 1);
+        return new DateRange(from, start.getTimeInMillis());
+    }
+}
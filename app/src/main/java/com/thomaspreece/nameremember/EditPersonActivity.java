@@ -13,7 +13,6 @@ import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
-import java.util.List;
 
 public class EditPersonActivity extends AppCompatActivity implements View.OnClickListener {
     private EditText firstN;
@@ -22,13 +21,14 @@ public class EditPersonActivity extends AppCompatActivity implements View.OnClic
     private EditText interests;
     private AutoCompleteTextView keywords;
 
-    NRSQLiteHelper db = new NRSQLiteHelper(this);
+    NRSQLiteHelper db;
     private String type;
     private Person person;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        db = NRSQLiteHelper.getInstance(this);
 
         Intent intent = getIntent();
         type = intent.getStringExtra("type");
@@ -59,8 +59,7 @@ public class EditPersonActivity extends AppCompatActivity implements View.OnClic
         interests = (EditText) findViewById(R.id.interests);
         keywords = (AutoCompleteKeywordsTextBox) findViewById(R.id.tags);
 
-        List<String> keywordList = db.getAllKeywords();
-        ArrayAdapter keywordAdapter = new KeywordsAdapter(this, R.layout.autocomplete_row_layout, R.id.autocomplete_listText, keywordList);
+        ArrayAdapter keywordAdapter = new KeywordsAdapter(this, R.layout.autocomplete_row_layout, R.id.autocomplete_listText, db.getKeywordIndex());
         keywords.setAdapter(keywordAdapter);
         keywords.setThreshold(0);
 
@@ -88,6 +87,7 @@ public class EditPersonActivity extends AppCompatActivity implements View.OnClic
             person.setInterests(interests.getText().toString());
             person.setKeywords(keywords.getText().toString());
             db.updatePerson(person);
+            setChangeResult("updated", person.getId());
         }else {
             String firstNameString = firstN.getText().toString();
             String lastNameString = lastN.getText().toString();
@@ -96,10 +96,19 @@ public class EditPersonActivity extends AppCompatActivity implements View.OnClic
             Person person = new Person(firstNameString, lastNameString, descriptionString, interestsString);
             person.setKeywords(keywords.getText().toString());
             db.createPerson(person);
+            setChangeResult("created", person.getId());
         }
         finish();
     }
 
+    // Tell the calling screen which person changed so it can update just that row
+    private void setChangeResult(String change, int personId) {
+        Intent result = new Intent();
+        result.putExtra("change", change);
+        result.putExtra("changed", personId);
+        setResult(RESULT_OK, result);
+    }
+
     @Override
     public void onBackPressed() {
         new AlertDialog.Builder(EditPersonActivity.this)
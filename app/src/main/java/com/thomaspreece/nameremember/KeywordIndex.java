@@ -0,0 +1,161 @@
+package com.thomaspreece.nameremember;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Keywords sorted by their lowercased text so all keywords starting with a prefix sit in one
+// range found by binary search. Suggestions from that range are ranked by how many persons use them.
+public class KeywordIndex {
+
+    private final String[] keys;
+    private final String[] keywords;
+    private final int[] counts;
+
+    // counts[i] is the number of persons using keywords[i]
+    public KeywordIndex(String[] keywords, int[] counts) {
+        Entry[] entries = new Entry[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            entries[i] = new Entry(keywords[i].toLowerCase(), keywords[i], counts[i]);
+        }
+        Arrays.sort(entries);
+        this.keys = new String[entries.length];
+        this.keywords = new String[entries.length];
+        this.counts = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            this.keys[i] = entries[i].key;
+            this.keywords[i] = entries[i].keyword;
+            this.counts[i] = entries[i].count;
+        }
+    }
+
+    private KeywordIndex(String[] keys, String[] keywords, int[] counts) {
+        this.keys = keys;
+        this.keywords = keywords;
+        this.counts = counts;
+    }
+
+    // A copy with each keyword's count changed by its delta, adding new keywords and dropping
+    // ones nobody uses any more. The index itself never changes so filters can read it on any thread.
+    public KeywordIndex adjust(Map<String, Integer> deltas) {
+        int[] adjustedCounts = counts.clone();
+        List<Entry> added = new ArrayList<>();
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            int position = indexOf(delta.getKey());
+            if (position != -1) {
+                adjustedCounts[position] += delta.getValue();
+            } else if (delta.getValue() > 0) {
+                added.add(new Entry(delta.getKey().toLowerCase(), delta.getKey(), delta.getValue()));
+            }
+        }
+        Collections.sort(added);
+
+        // merge the sorted new keywords into the existing order
+        int length = keywords.length + added.size();
+        String[] mergedKeys = new String[length];
+        String[] mergedKeywords = new String[length];
+        int[] mergedCounts = new int[length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keywords.length || j < added.size()) {
+            boolean takeAdded = i == keywords.length
+                    || (j < added.size() && added.get(j).compareTo(new Entry(keys[i], keywords[i], 0)) < 0);
+            if (takeAdded) {
+                Entry entry = added.get(j++);
+                mergedKeys[size] = entry.key;
+                mergedKeywords[size] = entry.keyword;
+                mergedCounts[size++] = entry.count;
+            } else {
+                if (adjustedCounts[i] > 0) {
+                    mergedKeys[size] = keys[i];
+                    mergedKeywords[size] = keywords[i];
+                    mergedCounts[size++] = adjustedCounts[i];
+                }
+                i++;
+            }
+        }
+        return new KeywordIndex(Arrays.copyOf(mergedKeys, size), Arrays.copyOf(mergedKeywords, size), Arrays.copyOf(mergedCounts, size));
+    }
+
+    public int size() {
+        return keywords.length;
+    }
+
+    // At most limit keywords starting with prefix, ignoring case, most used first
+    public List<String> suggest(String prefix, int limit) {
+        String key = prefix.toLowerCase();
+        int start = lowerBound(key);
+        int end = lowerBound(key + Character.MAX_VALUE);
+        if (start == end || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // indices of the best matches so far, kept ordered by count, ties stay alphabetical
+        int[] best = new int[Math.min(limit, end - start)];
+        int found = 0;
+        for (int i = start; i < end; i++) {
+            if (found == best.length && counts[i] <= counts[best[found - 1]]) {
+                continue;
+            }
+            int position = found == best.length ? found - 1 : found++;
+            while (position > 0 && counts[best[position - 1]] < counts[i]) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = i;
+        }
+
+        List<String> suggestions = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            suggestions.add(keywords[best[i]]);
+        }
+        return suggestions;
+    }
+
+    // position of exactly this keyword, -1 if it isn't indexed
+    private int indexOf(String keyword) {
+        String key = keyword.toLowerCase();
+        for (int i = lowerBound(key); i < keys.length && keys[i].equals(key); i++) {
+            if (keywords[i].equals(keyword)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // first position whose key is not less than key
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final String key;
+        final String keyword;
+        final int count;
+
+        Entry(String key, String keyword, int count) {
+            this.key = key;
+            this.keyword = keyword;
+            this.count = count;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int order = key.compareTo(other.key);
+            return order != 0 ? order : keyword.compareTo(other.keyword);
+        }
+    }
+}
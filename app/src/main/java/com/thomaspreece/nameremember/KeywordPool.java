@@ -0,0 +1,29 @@
+package com.thomaspreece.nameremember;
+
+import android.util.SparseArray;
+
+// One shared String per keyword id, so the persons in a loaded list point at the same instance of a
+// tag like "work" instead of each holding a copy read from its own cursor row.
+public class KeywordPool {
+    private final SparseArray<String> keywords = new SparseArray<>();
+
+    // The pooled instance for this keyword, ids can be reused after a keyword is deleted so the text is checked
+    public synchronized String intern(int keywordId, String keyword) {
+        String pooled = keywords.get(keywordId);
+        if (pooled != null && pooled.equals(keyword)) {
+            return pooled;
+        }
+        keywords.put(keywordId, keyword);
+        return keyword;
+    }
+
+    // Drop a deleted keyword so the pool only holds keywords that still exist
+    public synchronized void forget(int keywordId) {
+        keywords.remove(keywordId);
+    }
+
+    // Drop every keyword, for when the keywords table was replaced as a whole
+    public synchronized void clear() {
+        keywords.clear();
+    }
+}
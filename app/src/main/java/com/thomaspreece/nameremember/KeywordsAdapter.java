@@ -12,14 +12,15 @@ import java.util.List;
 
 
 public class KeywordsAdapter extends ArrayAdapter<String> {
+        // most suggestions shown for one prefix
+        private static final int MAX_SUGGESTIONS = 20;
+
         private Filter keywordsFilter = new KeywordsFilter();
-        private List<String> itemsAll;
-        private List<String> suggestions;
+        private final KeywordIndex index;
 
-        public KeywordsAdapter(Context context, @LayoutRes int resource, @IdRes int textViewResourceId, @NonNull List<String> objects) {
-            super(context, resource, textViewResourceId, objects);
-            this.itemsAll = new ArrayList<>(objects);
-            this.suggestions = new ArrayList<>();
+        public KeywordsAdapter(Context context, @LayoutRes int resource, @IdRes int textViewResourceId, @NonNull KeywordIndex index) {
+            super(context, resource, textViewResourceId, new ArrayList<String>());
+            this.index = index;
         }
 
         @Override
@@ -30,17 +31,14 @@ public class KeywordsAdapter extends ArrayAdapter<String> {
         private class KeywordsFilter extends Filter {
             @Override
             protected Filter.FilterResults performFiltering(CharSequence constraint) {
+                if (constraint == null) {
+                    return new FilterResults();
+                }
                 String constraintString = constraint.toString();
-                String subConstraintString = constraintString.substring(constraintString.lastIndexOf(",") + 1).trim().toLowerCase();
+                String subConstraintString = constraintString.substring(constraintString.lastIndexOf(",") + 1).trim();
 
                 if(!subConstraintString.equals("")) {
-                    suggestions.clear();
-                    for (String keyword : itemsAll) {
-
-                        if(keyword.toLowerCase().startsWith(subConstraintString)){
-                            suggestions.add(keyword);
-                        }
-                    }
+                    List<String> suggestions = index.suggest(subConstraintString, MAX_SUGGESTIONS);
                     FilterResults filterResults = new FilterResults();
                     filterResults.values = suggestions;
                     filterResults.count = suggestions.size();
@@ -53,18 +51,15 @@ public class KeywordsAdapter extends ArrayAdapter<String> {
             @Override
             protected void publishResults(CharSequence constraint, FilterResults results) {
                 //noinspection unchecked
-                ArrayList<String> filteredList = (ArrayList<String>) results.values;
+                List<String> filteredList = (List<String>) results.values;
 
                 if(results.count > 0) {
+                    setNotifyOnChange(false);
                     clear();
-                    for (String c : filteredList) {
-                        add(c);
-                    }
+                    addAll(filteredList);
                     notifyDataSetChanged();
                 }
 
             }
         }
 }
-
-
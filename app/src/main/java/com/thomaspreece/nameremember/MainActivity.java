@@ -1,12 +1,14 @@
 package com.thomaspreece.nameremember;
 
 import android.app.AlarmManager;
+import android.app.ProgressDialog;
 import android.app.PendingIntent;
 import android.app.SearchManager;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.support.v4.view.MenuItemCompat;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.support.v7.widget.SearchView;
@@ -20,29 +22,39 @@ import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.ListView;
-import android.widget.SimpleAdapter;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class MainActivity extends AppCompatActivity implements SearchView.OnQueryTextListener, SearchView.OnCloseListener, View.OnClickListener{
+public class MainActivity extends AppCompatActivity implements SearchView.OnQueryTextListener, SearchView.OnCloseListener, View.OnClickListener, PersonSearch.Listener, DatabaseExporter.Listener, BackupImporter.Listener, ContactImporter.Listener, PagedPersonSource.Listener{
     public static String PACKAGE_NAME;
 
-    NRSQLiteHelper db = new NRSQLiteHelper(this);
-    List<Person> personList;
-    private SimpleAdapter adapter;
+    NRSQLiteHelper db;
+    private PersonSearch personSearch;
+    private DatabaseExporter exporter;
+    private BackupImporter importer;
+    private ContactImporter contactImporter;
+    private ContactExporter contactExporter;
+    // reads pages of the full list for PagedPersonSource
+    private ExecutorService pageLoader;
+    private SearchLatency searchLatency;
+    private ProgressDialog progressDialog;
+    private PersonListAdapter adapter;
     private ListView list;
     private String searchText;
 
@@ -72,7 +84,16 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
         setSupportActionBar(myToolbar);
 
         //Open Database
+        db = NRSQLiteHelper.getInstance(this);
         db.getWritableDatabase();
+        personSearch = new PersonSearch(db, this);
+        searchLatency = SearchLatency.getInstance();
+        searchLatency.setRefreshRate(getWindowManager().getDefaultDisplay().getRefreshRate());
+        exporter = new DatabaseExporter(this, db, this);
+        importer = new BackupImporter(db, this);
+        contactImporter = new ContactImporter(db, this);
+        contactExporter = new ContactExporter(db, this);
+        pageLoader = Executors.newSingleThreadExecutor();
 
         // drop this database if already exists
         //db.onUpgrade(db.getWritableDatabase(), 1, 2);
@@ -84,15 +105,21 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
         addPersonButton.setVisibility(View.VISIBLE);
         searchOptionsButtonsInView = false;
 
+        list = (ListView) findViewById(R.id.list);
+        adapter = new PersonListAdapter(this);
+        list.setAdapter(adapter);
+
         // get all persons
-        personList = db.getAllPersons();
-        refreshPersonList();
+        showAllPersons();
 
-        list = (ListView) findViewById(R.id.list);
         list.setOnItemClickListener(new OnItemClickListener() {
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                PersonRow row = adapter.getItem(position);
+                if (row.isPlaceholder()) {
+                    return;
+                }
                 Intent intent = new Intent(MainActivity.this, PersonActivity.class);
-                intent.putExtra("person", personList.get(position).getId());
+                intent.putExtra("person", row.getId());
                 startActivityForResult(intent, 1);
             }
 
@@ -165,11 +192,205 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
 
 
 
+    }
+
+    @Override
+    protected void onPause() {
+        //Results drawn after coming back would be timed from before leaving
+        searchLatency.cancel();
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        personSearch.shutdown();
+        exporter.shutdown();
+        importer.shutdown();
+        contactImporter.shutdown();
+        contactExporter.shutdown();
+        pageLoader.shutdown();
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+        }
+        super.onDestroy();
     }
 
     private void updateToggleSearch(){
-        personList = db.getSearchPersons(searchText,activeToggle);
-        this.refreshPersonList();
+        searchLatency.inputReceived();
+        personSearch.searchNow(searchText, activeToggle);
+    }
+
+    @Override
+    public void onPageLoaded(PagedPersonSource source) {
+        //Pages of a list that was replaced meanwhile are dropped with it
+        if (adapter.getSource() == source) {
+            adapter.notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public void onPagesStale() {
+        //Only reload if the full list is still showing
+        if (searchOptionsButtonsInView == false && adapter.getSource() instanceof PagedPersonSource) {
+            this.showAllPersons();
+        }
+    }
+
+    @Override
+    public void onSearchResult(String term, int searchType, List<PersonRow> rows) {
+        //Ignore results that finish after the search was closed
+        if (searchOptionsButtonsInView == false) {
+            return;
+        }
+        this.refreshPersonList(new PersonListAdapter.ListSource(rows, term, searchType));
+        searchLatency.resultsShown(list, searchType, rows.size());
+    }
+
+    @Override
+    public void onExportProgress(long bytesDone, long bytesTotal) {
+        if (progressDialog != null && bytesTotal > 0) {
+            progressDialog.setProgress((int) (bytesDone * 100 / bytesTotal));
+        }
+    }
+
+    @Override
+    public void onExportFinished(File file, String checksum) {
+        dismissProgress();
+        Toast.makeText(getApplicationContext(), getResources().getString(R.string.DB_saved_to_SD)+" "+file.getName(), Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    public void onExportFailed(File file, IOException e) {
+        e.printStackTrace();
+        dismissProgress();
+        int message = e instanceof DatabaseExporter.NoFullBackupException ? R.string.export_needs_backup : R.string.export_failed;
+        Toast.makeText(getApplicationContext(), getResources().getString(message), Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    public void onImportFinished(File backup, int imported) {
+        dismissProgress();
+        Toast.makeText(getApplicationContext(), getResources().getString(R.string.imported_persons)+" "+imported, Toast.LENGTH_LONG).show();
+        this.reloadPersons();
+    }
+
+    @Override
+    public void onContactsProgress(long records, long bytesRead, long bytesTotal, long recordsPerSecond) {
+        if (progressDialog != null) {
+            progressDialog.setMessage(getResources().getString(R.string.importing_contacts, records, recordsPerSecond));
+            if (bytesTotal > 0) {
+                progressDialog.setProgress((int) (bytesRead * 100 / bytesTotal));
+            }
+        }
+    }
+
+    @Override
+    public void onContactsImported(File file, long imported) {
+        dismissProgress();
+        Toast.makeText(getApplicationContext(), getResources().getString(R.string.imported_persons)+" "+imported, Toast.LENGTH_LONG).show();
+        this.reloadPersons();
+    }
+
+    @Override
+    public void onContactsFailed(File file, Exception e) {
+        e.printStackTrace();
+        dismissProgress();
+        //Batches already written stay, importing the same file again carries on from there
+        Toast.makeText(getApplicationContext(), getResources().getString(R.string.import_failed), Toast.LENGTH_LONG).show();
+        this.reloadPersons();
+    }
+
+    @Override
+    public void onRestoreFinished(File backup, int deltasApplied) {
+        dismissProgress();
+        Toast.makeText(getApplicationContext(), getResources().getString(R.string.restored_deltas)+" "+deltasApplied, Toast.LENGTH_LONG).show();
+        this.reloadPersons();
+    }
+
+    //Merge adds the backup's people to the database, restore replaces the database with the backup and any deltas after it
+    private void chooseBackupImport(final File backup) {
+        new AlertDialog.Builder(this)
+                .setTitle(backup.getName())
+                .setItems(R.array.import_modes, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            showProgress(R.string.importing, false);
+                            importer.importBackup(backup);
+                            return;
+                        }
+                        new AlertDialog.Builder(MainActivity.this)
+                                .setIcon(android.R.drawable.ic_dialog_alert)
+                                .setTitle(R.string.restore_alert)
+                                .setMessage(R.string.restore_alert_text)
+                                .setPositiveButton(R.string.yes, new DialogInterface.OnClickListener() {
+                                    @Override
+                                    public void onClick(DialogInterface dialog, int which) {
+                                        //Deltas that don't follow on from the backup are skipped by the restore
+                                        File[] deltaFiles = backup.getParentFile().listFiles(new FilenameFilter() {
+                                            @Override
+                                            public boolean accept(File dir, String name) {
+                                                return name.endsWith(".delta");
+                                            }
+                                        });
+                                        List<File> deltas = deltaFiles == null ? new ArrayList<File>() : Arrays.asList(deltaFiles);
+                                        showProgress(R.string.restoring, false);
+                                        importer.restoreBackup(backup, deltas);
+                                    }
+                                })
+                                .setNegativeButton(R.string.no, null)
+                                .show();
+                    }
+                })
+                .show();
+    }
+
+    //Data layer and search timings in debug builds: adb shell dumpsys activity com.thomaspreece.nameremember/.MainActivity
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (BuildConfig.DEBUG) {
+            db.getQueryMetrics().dump(writer);
+            writer.println();
+            searchLatency.dump(writer);
+        }
+    }
+
+    private void reloadPersons() {
+        //Persons have changed so earlier search results can't be refined
+        personSearch.invalidate();
+        if (searchOptionsButtonsInView) {
+            personSearch.searchNow(searchText, activeToggle);
+        } else {
+            this.showAllPersons();
+        }
+    }
+
+    @Override
+    public void onImportFailed(File backup, RuntimeException e) {
+        e.printStackTrace();
+        dismissProgress();
+        Toast.makeText(getApplicationContext(), getResources().getString(R.string.import_failed), Toast.LENGTH_LONG).show();
+        //A restore keeps the steps that finished before the failure
+        this.reloadPersons();
+    }
+
+    private void showProgress(int message, boolean determinate) {
+        progressDialog = new ProgressDialog(this);
+        progressDialog.setMessage(getResources().getString(message));
+        if (determinate) {
+            progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            progressDialog.setMax(100);
+        }
+        progressDialog.setCancelable(false);
+        progressDialog.show();
+    }
+
+    private void dismissProgress() {
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+            progressDialog = null;
+        }
     }
 
     private void setToggles(){
@@ -204,65 +425,41 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        //Only update if we are not in middle of search
-        if(searchOptionsButtonsInView == false){
-            personList = db.getAllPersons();
-            this.refreshPersonList();
+        //Nothing was saved or deleted
+        if (resultCode != RESULT_OK || data == null) {
+            return;
         }
-
-    }
-
-    private void refreshPersonList(){
-        ArrayList<HashMap<String,String>> dataList = new ArrayList<>();
-
-        for (int i = 0; i < personList.size(); i++) {
-            HashMap<String,String> temp = new HashMap<>();
-            temp.put("name", personList.get(i).getFirstName()+" "+personList.get(i).getLastName());
-            if(searchOptionsButtonsInView == true){
-                switch(activeToggle){
-                    case 0:
-                        temp.put("other", "");
-                        break;
-                    case 1:
-                    case 3:
-                        temp.put("other", personList.get(i).getDescription());
-                        break;
-                    case 2:
-                        temp.put("other", personList.get(i).getKeywordsString());
-                        break;
-                    case 4:
-                        temp.put("other", personList.get(i).getInterests());
-                        break;
-                    default:
-                        throw new RuntimeException("Invalid Toggle State: "+activeToggle );
-                }
-            }else {
-                temp.put("other", "");
-            }
-            temp.put("date", personList.get(i).getDateTime());
-            dataList.add(temp);
+        //Persons have changed so earlier search results can't be refined
+        personSearch.invalidate();
+
+        String change = data.getStringExtra("change");
+        int changedId = data.getIntExtra("changed", -1);
+        PersonListAdapter.Source source = adapter.getSource();
+        boolean applied;
+        if ("updated".equals(change)) {
+            applied = source.replace(PersonRow.from(db.readPerson(changedId), searchOptionsButtonsInView ? activeToggle : PersonRow.NO_OTHER));
+        } else if ("deleted".equals(change)) {
+            applied = source.remove(changedId);
+        } else {
+            applied = false;
         }
 
-        if (searchOptionsButtonsInView == false || activeToggle == 0) {
-            adapter = new SimpleAdapter(
-                    this,
-                    dataList,
-                    R.layout.person_list_2_row_layout,
-                    new String[]{"name", "date"},
-                    new int[]{R.id.listText, R.id.listText3}
-            );
-        }else{
-            adapter = new SimpleAdapter(
-                    this,
-                    dataList,
-                    R.layout.person_list_3_row_layout,
-                    new String[]{"name", "other", "date"},
-                    new int[]{R.id.listText, R.id.listText2, R.id.listText3}
-            );
+        if (applied) {
+            adapter.notifyDataSetChanged();
+        } else if (searchOptionsButtonsInView == false) {
+            this.showAllPersons();
+        } else {
+            //The change may move the person in or out of the results so search again
+            personSearch.searchNow(searchText, activeToggle);
         }
-        list = (ListView) findViewById(R.id.list);
-        list.setAdapter(adapter);
+    }
+
+    private void showAllPersons(){
+        this.refreshPersonList(new PagedPersonSource(db, pageLoader, this));
+    }
 
+    private void refreshPersonList(PersonListAdapter.Source source){
+        adapter.setSource(source, searchOptionsButtonsInView ? activeToggle : 0);
     }
 
     @Override
@@ -279,6 +476,9 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
         searchView.setOnQueryTextListener(this);
         searchView.setOnCloseListener(this);
         searchView.setOnSearchClickListener(this);
+
+        //Query stats are a debugging screen
+        menu.findItem(R.id.menu_query_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -299,8 +499,9 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
         searchOptionButtons.setVisibility(View.GONE);
         addPersonButton.setVisibility(View.VISIBLE);
         searchOptionsButtonsInView = false;
-        personList = db.getAllPersons();
-        this.refreshPersonList();
+        personSearch.invalidate();
+        searchLatency.cancel();
+        this.showAllPersons();
         return false;
     }
 
@@ -310,8 +511,8 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
         addPersonButton.setVisibility(View.GONE);
         searchOptionsButtonsInView = true;
         searchText = newText;
-        personList = db.getSearchPersons(newText,activeToggle);
-        this.refreshPersonList();
+        searchLatency.inputReceived();
+        personSearch.search(newText, activeToggle);
         return true;
     }
 
@@ -339,51 +540,94 @@ public class MainActivity extends AppCompatActivity implements SearchView.OnQuer
             intent.putExtra("type", "new");
             startActivityForResult(intent, 1);
             return true;
+        }else if (id == R.id.menu_query_metrics) {
+            startActivity(new Intent(MainActivity.this, QueryMetricsActivity.class));
+            return true;
         }else if (id == R.id.menu_export) {
-            //Open your local db as the input stream
-            try {
-                File externalFilesDir = this.getExternalFilesDir(null);
-                if (externalFilesDir == null) {
-                    Toast.makeText(getApplicationContext(), getResources().getString(R.string.SD_not_mounted), Toast.LENGTH_LONG).show();
-                    return true;
-                }
-
-                Calendar c = Calendar.getInstance();
-                SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy_HH-mm-ss", Locale.UK);
-                String strDate = sdf.format(c.getTime());
-
-
-                File inFileName = this.getDatabasePath("NameDB");
-                String outFileName = externalFilesDir.toString() + "/NameDB_"+strDate+".bak";
-                String outFileNameOnly = "NameDB_"+strDate+".bak";
-
+            File externalFilesDir = this.getExternalFilesDir(null);
+            if (externalFilesDir == null) {
+                Toast.makeText(getApplicationContext(), getResources().getString(R.string.SD_not_mounted), Toast.LENGTH_LONG).show();
+                return true;
+            }
 
-                FileInputStream fis = new FileInputStream(inFileName);
+            Calendar c = Calendar.getInstance();
+            SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy_HH-mm-ss", Locale.UK);
+            String strDate = sdf.format(c.getTime());
+
+            final File outDir = externalFilesDir;
+            final String outName = "NameDB_"+strDate;
+
+            new AlertDialog.Builder(this)
+                    .setTitle(R.string.export_choose)
+                    .setItems(R.array.export_formats, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            //Export runs in the background, progress is shown until it finishes
+                            showProgress(R.string.exporting, which != 3);
+                            switch (which) {
+                                case 0:
+                                    exporter.export(new File(outDir, outName+".bak"), false, true);
+                                    break;
+                                case 1:
+                                    contactExporter.export(new File(outDir, outName+".csv"), ContactExporter.FORMAT_CSV);
+                                    break;
+                                case 2:
+                                    contactExporter.export(new File(outDir, outName+".json"), ContactExporter.FORMAT_JSON);
+                                    break;
+                                case 3:
+                                    exporter.exportChanges(new File(outDir, outName+".delta"));
+                                    break;
+                                default:
+                                    throw new RuntimeException("Invalid export format: "+which);
+                            }
+                        }
+                    })
+                    .show();
+            return true;
+        }else if (id == R.id.menu_import) {
+            File externalFilesDir = this.getExternalFilesDir(null);
+            if (externalFilesDir == null) {
+                Toast.makeText(getApplicationContext(), getResources().getString(R.string.SD_not_mounted), Toast.LENGTH_LONG).show();
+                return true;
+            }
 
-                //Open the empty db as the output stream
-                OutputStream output = new FileOutputStream(outFileName);
-                //transfer bytes from the inputfile to the outputfile
-                byte[] buffer = new byte[1024];
-                int length;
-                while ((length = fis.read(buffer)) > 0) {
-                    output.write(buffer, 0, length);
+            final File[] backups = externalFilesDir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".bak") || ContactImporter.canImport(new File(dir, name));
                 }
-                //Close the streams
-                output.flush();
-                output.close();
-                fis.close();
-                Toast.makeText(getApplicationContext(), getResources().getString(R.string.DB_saved_to_SD)+" "+outFileNameOnly, Toast.LENGTH_LONG).show();
-
-            } catch(IOException e1) {
-                e1.printStackTrace();
-                Toast.makeText(getApplicationContext(), getResources().getString(R.string.export_failed), Toast.LENGTH_LONG).show();
+            });
+            if (backups == null || backups.length == 0) {
+                Toast.makeText(getApplicationContext(), getResources().getString(R.string.import_no_backups), Toast.LENGTH_LONG).show();
                 return true;
             }
 
+            //Newest backup first
+            Arrays.sort(backups, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return a.lastModified() == b.lastModified() ? 0 : (a.lastModified() < b.lastModified() ? 1 : -1);
+                }
+            });
+            CharSequence[] backupNames = new CharSequence[backups.length];
+            for (int i = 0; i < backups.length; i++) {
+                backupNames[i] = backups[i].getName();
+            }
 
-            return true;
-        }else if (id == R.id.menu_import) {
-            Toast.makeText(getApplicationContext(), getResources().getString(R.string.not_implemented_yet), Toast.LENGTH_LONG).show();
+            new AlertDialog.Builder(this)
+                    .setTitle(R.string.import_choose)
+                    .setItems(backupNames, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            if (ContactImporter.canImport(backups[which])) {
+                                showProgress(R.string.importing, true);
+                                contactImporter.importContacts(backups[which]);
+                            } else {
+                                chooseBackupImport(backups[which]);
+                            }
+                        }
+                    })
+                    .show();
             return true;
         }
 
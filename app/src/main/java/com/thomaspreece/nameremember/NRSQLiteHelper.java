@@ -1,25 +1,37 @@
 package com.thomaspreece.nameremember;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
 
 import android.content.ContentValues;
 import android.content.Context;
 
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.Toast;
 
 public class NRSQLiteHelper extends SQLiteOpenHelper{
     // database version
-    private static final int database_VERSION = 4;
+    private static final int database_VERSION = 11;
     // database name
     private static final String database_NAME = "NameDB";
 
@@ -30,6 +42,13 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
     private static final String persons_DESC = "desc";
     private static final String persons_INTERESTS = "interests";
     private static final String persons_DATE = "date";
+    // normalized names for the name search, see NameKeys
+    private static final String persons_FIRST_LAST_KEY = "firstLastKey";
+    private static final String persons_LAST_FIRST_KEY = "lastFirstKey";
+    // default for persons.date, the current time in epoch milliseconds
+    private static final String persons_DATE_NOW = "(CAST(strftime('%s', 'now') AS INTEGER) * 1000)";
+    // trigger statement copying a new or changed person into persons_fts
+    private static final String persons_FTS_INSERT = "INSERT INTO persons_fts (docid, name, description, interests) VALUES (new.id, new.firstN || ' ' || new.lastN, new.`desc`, new.interests);";
     private static final String[] table_PERSONS_COLUMNS = { persons_ID, persons_FIRSTN, persons_LASTN, persons_DESC, persons_INTERESTS, persons_DATE };
 
     private static final String table_KEYWORDS = "keywords";
@@ -42,20 +61,175 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
     private static final String persons_keywords_KEYWORD_ID = "keyword_id";
     private static final String[] table_PERSONS_KEYWORDS_COLUMNS = {persons_keywords_NAME_ID,persons_keywords_KEYWORD_ID};
 
+    // page cache size in KiB, passed to PRAGMA cache_size as a negative value
+    private static final int database_CACHE_SIZE_KB = 4096;
 
-    public NRSQLiteHelper(Context context) {
-        super(context, database_NAME, null, database_VERSION);
+    // maximum number of person ids bound into a single keyword query
+    private static final int keywords_BATCH_SIZE = 500;
+
+
+    private static NRSQLiteHelper instance;
+
+    // shared keyword strings for everything read through this helper
+    private final KeywordPool keywordPool = new KeywordPool();
+
+    // every keyword with its usage count, read once then kept in step by the person writes below
+    private KeywordIndex keywordIndex;
+    // usage changes from import batches committed since the index last caught up, see stopImport
+    private final Map<String, Integer> importKeywordDeltas = new HashMap<>();
+
+    // timings of the operations below, see QueryMetrics
+    private final QueryMetrics metrics = new QueryMetrics();
+
+    // One helper, and so one open connection, is shared by the whole process and never closed
+    public static synchronized NRSQLiteHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new NRSQLiteHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NRSQLiteHelper(Context context) {
+        this(context, database_NAME);
+    }
+
+    // A helper on a database file of its own, for the benchmarks in androidTest
+    NRSQLiteHelper(Context context, String name) {
+        super(context, name, null, database_VERSION);
+        // readers no longer block behind a save
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public QueryMetrics getQueryMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA cache_size = -" + database_CACHE_SIZE_KB);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         // SQL statement to create person table
-        String CREATE_NAME_TABLE = "CREATE TABLE persons ( " + "id INTEGER PRIMARY KEY AUTOINCREMENT, " + "firstN TEXT, " + "lastN TEXT, " + "desc TEXT, "+ "interests TEXT," + "date TIMESTAMP DEFAULT CURRENT_TIMESTAMP  )";
+        String CREATE_NAME_TABLE = "CREATE TABLE persons ( " + "id INTEGER PRIMARY KEY AUTOINCREMENT, " + "firstN TEXT, " + "lastN TEXT, " + "desc TEXT, "+ "interests TEXT," + "date INTEGER DEFAULT " + persons_DATE_NOW + " )";
         String CREATE_NAMES_KEYWORDS_TABLE = "CREATE TABLE persons_keywords ( " + "person_id INTEGER, " + "keyword_id INTEGER )";
         String CREATE_KEYWORDS_TABLE = "CREATE TABLE keywords ( " + "id INTEGER PRIMARY KEY AUTOINCREMENT, " + "keyword TEXT )";
         db.execSQL(CREATE_NAME_TABLE);
         db.execSQL(CREATE_NAMES_KEYWORDS_TABLE);
         db.execSQL(CREATE_KEYWORDS_TABLE);
+        this.createSearchTable(db);
+        this.createKeywordIndexes(db);
+        this.createDateIndex(db);
+        this.createImportProgressTable(db);
+        this.createChangeLog(db);
+        this.createNameKeys(db);
+        this.createNameOrderIndex(db);
+    }
+
+    private void createDateIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX persons_date ON persons (date)");
+    }
+
+    // The main list's order, so a page is a range scan starting after the last row of the page before
+    private void createNameOrderIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX persons_name_order ON persons (lastN COLLATE NOCASE, firstN COLLATE NOCASE, id)");
+    }
+
+    // Every write to persons, keywords and persons_keywords logs the person or keyword it touched, so a
+    // delta backup only has to copy those rows. Link changes are logged against their person.
+    // backup_watermark holds the change_log seq the last backup covered, NULL until the first full backup,
+    // and the chain that backup and the deltas after it belong to. Nothing is logged while there is no
+    // chain, so an install that never takes a full backup keeps no log.
+    // Anything that rebuilds persons, as convertDatesToEpoch does, has to create these triggers again.
+    private void createChangeLog(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE change_log ( seq INTEGER PRIMARY KEY AUTOINCREMENT, table_name TEXT, row_id INTEGER )");
+        db.execSQL("CREATE TABLE backup_watermark ( seq INTEGER, chain TEXT )");
+        db.execSQL("INSERT INTO backup_watermark (seq, chain) VALUES (NULL, NULL)");
+        String logging = " WHEN (SELECT chain FROM backup_watermark) IS NOT NULL BEGIN INSERT INTO change_log (table_name, row_id) VALUES ";
+        db.execSQL("CREATE TRIGGER change_log_persons_insert AFTER INSERT ON persons" + logging + "('persons', new.id); END");
+        db.execSQL("CREATE TRIGGER change_log_persons_update AFTER UPDATE ON persons" + logging + "('persons', new.id); END");
+        db.execSQL("CREATE TRIGGER change_log_persons_delete AFTER DELETE ON persons" + logging + "('persons', old.id); END");
+        db.execSQL("CREATE TRIGGER change_log_keywords_insert AFTER INSERT ON keywords" + logging + "('keywords', new.id); END");
+        db.execSQL("CREATE TRIGGER change_log_keywords_update AFTER UPDATE ON keywords" + logging + "('keywords', new.id); END");
+        db.execSQL("CREATE TRIGGER change_log_keywords_delete AFTER DELETE ON keywords" + logging + "('keywords', old.id); END");
+        db.execSQL("CREATE TRIGGER change_log_links_insert AFTER INSERT ON persons_keywords" + logging + "('persons', new.person_id); END");
+        db.execSQL("CREATE TRIGGER change_log_links_delete AFTER DELETE ON persons_keywords" + logging + "('persons', old.person_id); END");
+    }
+
+    // Stored name search keys, indexed so a name prefix is a range scan on either key
+    private void createNameKeys(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE persons ADD COLUMN firstLastKey TEXT");
+        db.execSQL("ALTER TABLE persons ADD COLUMN lastFirstKey TEXT");
+        this.fillNameKeys(db);
+        db.execSQL("CREATE INDEX persons_first_last_key ON persons (firstLastKey)");
+        db.execSQL("CREATE INDEX persons_last_first_key ON persons (lastFirstKey)");
+    }
+
+    // Compute the keys of persons that don't have them, for rows copied in by SQL from backups
+    private void fillNameKeys(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT id, firstN, lastN FROM main.persons WHERE firstLastKey IS NULL", null);
+        SQLiteStatement update = db.compileStatement("UPDATE main.persons SET firstLastKey = ?, lastFirstKey = ? WHERE id = ?");
+        try {
+            while (cursor.moveToNext()) {
+                update.bindString(1, NameKeys.firstLast(cursor.getString(1), cursor.getString(2)));
+                update.bindString(2, NameKeys.lastFirst(cursor.getString(1), cursor.getString(2)));
+                update.bindLong(3, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+            cursor.close();
+        }
+    }
+
+    // How far each interrupted contacts import got, see insertImportBatch
+    private void createImportProgressTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE import_progress ( source TEXT PRIMARY KEY, records INTEGER )");
+    }
+
+    // Rebuild persons with the TIMESTAMP text date stored as INTEGER epoch milliseconds
+    private void convertDatesToEpoch(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE persons_new ( " + "id INTEGER PRIMARY KEY AUTOINCREMENT, " + "firstN TEXT, " + "lastN TEXT, " + "desc TEXT, "+ "interests TEXT," + "date INTEGER DEFAULT " + persons_DATE_NOW + " )");
+        // the old CURRENT_TIMESTAMP text is UTC, which is what strftime assumes
+        db.execSQL("INSERT INTO persons_new (id, firstN, lastN, `desc`, interests, date) SELECT id, firstN, lastN, `desc`, interests, CAST(strftime('%s', date) AS INTEGER) * 1000 FROM persons");
+        // dropping persons also drops the triggers on it
+        db.execSQL("DROP TABLE persons");
+        db.execSQL("ALTER TABLE persons_new RENAME TO persons");
+        this.createSearchTriggers(db);
+        this.createDateIndex(db);
+    }
+
+    // Index keyword lookups and both directions of the persons <-> keywords link table
+    private void createKeywordIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX keywords_keyword ON keywords (keyword)");
+        db.execSQL("CREATE UNIQUE INDEX persons_keywords_person_keyword ON persons_keywords (person_id, keyword_id)");
+        db.execSQL("CREATE INDEX persons_keywords_keyword_person ON persons_keywords (keyword_id, person_id)");
+    }
+
+    // Merge duplicate keywords and links left by older versions so the unique indexes can be built
+    private void removeDuplicateKeywords(SQLiteDatabase db) {
+        db.execSQL("UPDATE persons_keywords SET keyword_id = (SELECT MIN(k2.id) FROM keywords k1 INNER JOIN keywords k2 ON k2.keyword IS k1.keyword WHERE k1.id = persons_keywords.keyword_id) WHERE keyword_id IN (SELECT id FROM keywords)");
+        db.execSQL("DELETE FROM keywords WHERE id NOT IN (SELECT MIN(id) FROM keywords GROUP BY keyword)");
+        db.execSQL("DELETE FROM persons_keywords WHERE rowid NOT IN (SELECT MIN(rowid) FROM persons_keywords GROUP BY person_id, keyword_id)");
+    }
+
+    // Build the FTS4 table used for name, description and interests search and the triggers keeping it in sync
+    private void createSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE persons_fts USING fts4(name, description, interests)");
+        this.createSearchTriggers(db);
+        db.execSQL("INSERT INTO persons_fts (docid, name, description, interests) SELECT id, firstN || ' ' || lastN, `desc`, interests FROM persons");
+    }
+
+    private void createSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER persons_fts_insert AFTER INSERT ON persons BEGIN " + persons_FTS_INSERT + " END");
+        this.createSearchUpdateTrigger(db);
+        db.execSQL("CREATE TRIGGER persons_fts_delete AFTER DELETE ON persons BEGIN DELETE FROM persons_fts WHERE docid = old.id; END");
+    }
+
+    // Only for the indexed columns, so filling the name keys doesn't rewrite the FTS rows
+    private void createSearchUpdateTrigger(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER persons_fts_update AFTER UPDATE OF firstN, lastN, `desc`, interests ON persons BEGIN DELETE FROM persons_fts WHERE docid = old.id; " + persons_FTS_INSERT + " END");
     }
 
     @Override
@@ -66,6 +240,34 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
             db.execSQL("DROP TABLE IF EXISTS names_keywords");
             db.execSQL("DROP TABLE IF EXISTS keywords");
             this.onCreate(db);
+            return;
+        }
+        if (oldVersion<5) {
+            this.createSearchTable(db);
+        }
+        if (oldVersion<6) {
+            this.removeDuplicateKeywords(db);
+            this.createKeywordIndexes(db);
+        }
+        if (oldVersion<7) {
+            this.convertDatesToEpoch(db);
+        }
+        if (oldVersion<8) {
+            this.createImportProgressTable(db);
+        }
+        if (oldVersion<9) {
+            this.createChangeLog(db);
+        }
+        if (oldVersion<10) {
+            // filling the keys is not a change a delta backup needs to carry, restores compute them again
+            long seq = changeLogSeq(db, "main");
+            db.execSQL("DROP TRIGGER persons_fts_update");
+            this.createSearchUpdateTrigger(db);
+            this.createNameKeys(db);
+            db.execSQL("DELETE FROM change_log WHERE seq > ?", new Object[]{seq});
+        }
+        if (oldVersion<11) {
+            this.createNameOrderIndex(db);
         }
     }
 
@@ -79,88 +281,379 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
         values.put(persons_LASTN, person.getLastName());
         values.put(persons_DESC, person.getDescription());
         values.put(persons_INTERESTS, person.getInterests());
+        values.put(persons_DATE, System.currentTimeMillis());
+        values.put(persons_FIRST_LAST_KEY, NameKeys.firstLast(person.getFirstName(), person.getLastName()));
+        values.put(persons_LAST_FIRST_KEY, NameKeys.lastFirst(person.getFirstName(), person.getLastName()));
+
+        QueryMetrics.Trace trace = metrics.begin("createPerson");
+        // insert person and keywords in a single transaction
+        db.beginTransaction();
+        try {
+            long nameID = db.insert(table_PERSONS, null, values);
+            this.insertKeywords(db, nameID, person.getKeywords());
+            db.setTransactionSuccessful();
+            person.setId((int) nameID);
+        } finally {
+            db.endTransaction();
+        }
+
+        Map<String, Integer> keywordDeltas = new HashMap<>();
+        countKeywords(keywordDeltas, person.getKeywords(), 1);
+        this.updateKeywordIndex(keywordDeltas);
+        metrics.end(db, trace, 1);
+    }
+
+    // Link keywords to a person, creating any keywords that don't exist yet. Caller owns the transaction.
+    private void insertKeywords(SQLiteDatabase db, long nameID, List<String> keywordsList) {
+        KeywordStatements statements = new KeywordStatements(db);
+        try {
+            statements.insert(nameID, keywordsList);
+        } finally {
+            statements.close();
+        }
+    }
 
-        // insert person
-        long nameID = db.insert(table_PERSONS, null, values);
-
-        //insert keywords
-        List<String> keywordsList = person.getKeywords();
-        for (int i = 0; i < keywordsList.size(); i++) {
-            if(!keywordsList.get(i).trim().equals("")) {
-                Cursor cursor_keywords = db.query(table_KEYWORDS, table_KEYWORDS_COLUMNS, "keyword = ?", new String[]{keywordsList.get(i)}, null, null, null, null);
-                long keywordID;
-                if (cursor_keywords.moveToFirst()) {
-                    keywordID = cursor_keywords.getInt(0);
-                } else {
-                    ContentValues keyword = new ContentValues();
-                    keyword.put(keywords_KEYWORD, keywordsList.get(i));
-                    keywordID = db.insert(table_KEYWORDS, null, keyword);
+    // Compiled statements linking keywords to persons, kept open while a batch of persons is written
+    private static class KeywordStatements {
+        private final SQLiteStatement insertKeyword;
+        private final SQLiteStatement selectKeyword;
+        private final SQLiteStatement insertLink;
+
+        KeywordStatements(SQLiteDatabase db) {
+            insertKeyword = db.compileStatement("INSERT OR IGNORE INTO keywords (keyword) VALUES (?)");
+            try {
+                selectKeyword = db.compileStatement("SELECT id FROM keywords WHERE keyword = ?");
+                try {
+                    insertLink = db.compileStatement("INSERT OR IGNORE INTO persons_keywords (person_id, keyword_id) VALUES (?, ?)");
+                } catch (RuntimeException e) {
+                    selectKeyword.close();
+                    throw e;
                 }
-                cursor_keywords.close();
-                ContentValues name_keyword = new ContentValues();
-                name_keyword.put(persons_keywords_NAME_ID, nameID);
-                name_keyword.put(persons_keywords_KEYWORD_ID, keywordID);
-                db.insert(table_PERSONS_KEYWORDS, null, name_keyword);
+            } catch (RuntimeException e) {
+                insertKeyword.close();
+                throw e;
             }
         }
 
-        // close database transaction
-        db.close();
+        void insert(long nameID, List<String> keywordsList) {
+            for (String keyword : keywordsList) {
+                if (keyword.trim().equals("")) {
+                    continue;
+                }
+                insertKeyword.bindString(1, keyword);
+                long keywordID = insertKeyword.executeInsert();
+                if (keywordID == -1) {
+                    // keyword already exists
+                    selectKeyword.bindString(1, keyword);
+                    keywordID = selectKeyword.simpleQueryForLong();
+                }
+                insertLink.bindLong(1, nameID);
+                insertLink.bindLong(2, keywordID);
+                insertLink.executeInsert();
+            }
+        }
+
+        void close() {
+            insertKeyword.close();
+            selectKeyword.close();
+            insertLink.close();
+        }
     }
 
-    public LinkedList<String> getAllKeywords() {
-        LinkedList<String> keywords = new LinkedList<>();
-        // get reference of the NamesDB database
+    // Records of source already committed by an import that was interrupted, 0 if none was
+    public long getImportProgress(String source) {
         SQLiteDatabase db = this.getWritableDatabase();
-        // Get all persons
-        Cursor cursor = db.query(table_KEYWORDS, table_KEYWORDS_COLUMNS, "", null, null, null, null);
-        if (cursor.moveToFirst()) {
-            do {
-                keywords.add(cursor.getString(1));
-            } while (cursor.moveToNext());
+        Cursor cursor = db.rawQuery("SELECT records FROM import_progress WHERE source = ?", new String[]{source});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Insert a batch of imported persons with compiled statements, recording in the same transaction
+    // that the first records of source are done so a resumed import carries on after them
+    // Persons without a date are dated now. The keyword index catches up once, in finishImport or stopImport.
+    public void insertImportBatch(List<Person> persons, String source, long records) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        Map<String, Integer> keywordDeltas = new HashMap<>();
+        long now = System.currentTimeMillis();
+        QueryMetrics.Trace trace = metrics.begin("insertImportBatch");
+
+        // compiled before the transaction starts, so a failed compile can't leave it open
+        SQLiteStatement insertPerson = null;
+        SQLiteStatement saveProgress = null;
+        KeywordStatements keywordStatements = null;
+        try {
+            insertPerson = db.compileStatement("INSERT INTO persons (firstN, lastN, `desc`, interests, date, firstLastKey, lastFirstKey) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            saveProgress = db.compileStatement("INSERT OR REPLACE INTO import_progress (source, records) VALUES (?, ?)");
+            keywordStatements = new KeywordStatements(db);
+            db.beginTransaction();
+            try {
+                for (Person person : persons) {
+                    bindNullable(insertPerson, 1, person.getFirstName());
+                    bindNullable(insertPerson, 2, person.getLastName());
+                    bindNullable(insertPerson, 3, person.getDescription());
+                    bindNullable(insertPerson, 4, person.getInterests());
+                    insertPerson.bindLong(5, person.getDate() != null ? person.getDate().getTime() : now);
+                    insertPerson.bindString(6, NameKeys.firstLast(person.getFirstName(), person.getLastName()));
+                    insertPerson.bindString(7, NameKeys.lastFirst(person.getFirstName(), person.getLastName()));
+                    long nameID = insertPerson.executeInsert();
+                    keywordStatements.insert(nameID, person.getKeywords());
+                    person.setId((int) nameID);
+                    countKeywords(keywordDeltas, person.getKeywords(), 1);
+                }
+                saveProgress.bindString(1, source);
+                saveProgress.bindLong(2, records);
+                saveProgress.executeInsert();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            if (insertPerson != null) {
+                insertPerson.close();
+            }
+            if (saveProgress != null) {
+                saveProgress.close();
+            }
+            if (keywordStatements != null) {
+                keywordStatements.close();
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<String, Integer> delta : keywordDeltas.entrySet()) {
+                Integer count = importKeywordDeltas.get(delta.getKey());
+                importKeywordDeltas.put(delta.getKey(), (count == null ? 0 : count) + delta.getValue());
+            }
+        }
+        metrics.end(db, trace, persons.size());
+    }
+
+    // Forget the progress of an import that has read all of source
+    public void finishImport(String source) {
+        this.getWritableDatabase().delete("import_progress", "source = ?", new String[]{source});
+        this.stopImport();
+    }
+
+    // Bring the keyword index up to date with the batches committed so far, for an import that
+    // stopped part way. Its progress is kept so it can be resumed.
+    public synchronized void stopImport() {
+        this.updateKeywordIndex(importKeywordDeltas);
+        importKeywordDeltas.clear();
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    // Every keyword with the number of persons using it, for autocomplete. Read from the database
+    // the first time only, after that the person writes keep it current.
+    public synchronized KeywordIndex getKeywordIndex() {
+        if (keywordIndex != null) {
+            return keywordIndex;
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getKeywordIndex");
+        String indexQuery = "SELECT keywords.keyword, COUNT(persons_keywords.person_id) FROM keywords LEFT JOIN persons_keywords ON keywords.id = persons_keywords.keyword_id WHERE keywords.keyword IS NOT NULL GROUP BY keywords.id";
+        trace.query(indexQuery, null);
+        Cursor cursor = db.rawQuery(indexQuery, null);
+        try {
+            String[] keywords = new String[cursor.getCount()];
+            int[] counts = new int[keywords.length];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                keywords[i] = cursor.getString(0);
+                counts[i] = cursor.getInt(1);
+            }
+            keywordIndex = new KeywordIndex(keywords, counts);
+            // the batches of a running import are already counted
+            importKeywordDeltas.clear();
+        } finally {
+            cursor.close();
+        }
+        metrics.end(db, trace, keywordIndex.size());
+        return keywordIndex;
+    }
+
+    // Apply usage changes from a committed write, nothing to do until the index has been read
+    private synchronized void updateKeywordIndex(Map<String, Integer> keywordDeltas) {
+        if (keywordIndex != null && !keywordDeltas.isEmpty()) {
+            keywordIndex = keywordIndex.adjust(keywordDeltas);
+        }
+    }
+
+    // Add sign to the count of each distinct keyword, a person links a keyword at most once
+    private static void countKeywords(Map<String, Integer> keywordDeltas, List<String> keywords, int sign) {
+        if (keywords == null) {
+            return;
+        }
+        for (String keyword : new HashSet<>(keywords)) {
+            // blank keywords are never stored, see KeywordStatements.insert
+            if (keyword == null || keyword.trim().equals("")) {
+                continue;
+            }
+            Integer count = keywordDeltas.get(keyword);
+            keywordDeltas.put(keyword, (count == null ? 0 : count) + sign);
         }
-        cursor.close();
-        Collections.sort(keywords);
-        return keywords;
     }
 
     public List<Person> getSearchPersons(String term , int searchType){
-        List<Person> persons = new LinkedList<>();
+        return this.getSearchPersons(term, searchType, null);
+    }
 
+    // Search that can be abandoned part way through, throws OperationCanceledException once cancellationSignal is cancelled
+    public List<Person> getSearchPersons(String term , int searchType, CancellationSignal cancellationSignal){
         // get reference of the NamesDB database
         SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getSearchPersons", searchType);
+
+        // parse all results
+        List<Person> persons = readPersons(this.searchCursor(db, term, searchType, "persons.*", cancellationSignal, trace));
+
+        // fetch keywords for the whole result set in batches of ids
+        this.loadKeywords(db, persons, false, cancellationSignal);
+        metrics.end(db, trace, persons.size());
+        return persons;
+    }
+
+    // Same search as getSearchPersons but only reading what the list shows for searchType
+    public List<PersonRow> getSearchRows(String term , int searchType, CancellationSignal cancellationSignal){
+        SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getSearchRows", searchType);
+        List<PersonRow> rows = readRows(this.searchCursor(db, term, searchType, rowColumns(searchType), cancellationSignal, trace), searchType);
+        if (searchType == 2) {
+            this.loadRowKeywords(db, rows, cancellationSignal);
+        }
+        metrics.end(db, trace, rows.size());
+        return rows;
+    }
+
+    // Rows of the main list, in getAllPersons order, for lists that load rows as they are shown.
+    // The page starts skip rows after the row after, or at the start when after is null, so paging on
+    // from the row last loaded is a seek in persons_name_order however deep the list is scrolled.
+    public List<PersonRow> getPersonRowsPage(PersonRow after, int skip, int count) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getPersonRowsPage");
+        String order = " ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC, id ASC LIMIT ? OFFSET ?";
+        List<String> pageArgs = new ArrayList<>();
+        String pageQuery;
+        if (after == null) {
+            pageQuery = "SELECT " + rowColumns(PersonRow.NO_OTHER) + " FROM persons" + order;
+        } else {
+            // (lastN, firstN, id) > after's, spelt out as SQLite before 3.15 has no row values
+            List<String> lastArgs = new ArrayList<>();
+            List<String> firstArgs = new ArrayList<>();
+            String where = keyAfter("lastN", after.getLastName(), keyAfter("firstN", after.getFirstName(), "id > ?", firstArgs), lastArgs);
+            if (after.getLastName() != null) {
+                // the start of the range scan, NULLs sort first so there is none for a NULL name
+                where = "lastN >= ? COLLATE NOCASE AND " + where;
+                pageArgs.add(after.getLastName());
+            }
+            pageArgs.addAll(lastArgs);
+            pageArgs.addAll(firstArgs);
+            pageArgs.add(String.valueOf(after.getId()));
+            pageQuery = "SELECT " + rowColumns(PersonRow.NO_OTHER) + " FROM persons WHERE " + where + order;
+        }
+        pageArgs.add(String.valueOf(count));
+        pageArgs.add(String.valueOf(skip));
+        String[] args = pageArgs.toArray(new String[pageArgs.size()]);
+        trace.query(pageQuery, args);
+        List<PersonRow> rows = readRows(db.rawQuery(pageQuery, args), PersonRow.NO_OTHER);
+        metrics.end(db, trace, rows.size());
+        return rows;
+    }
+
+    // Rows sorting after value in column under NOCASE, or equal to it and matching rest
+    private static String keyAfter(String column, String value, String rest, List<String> args) {
+        if (value == null) {
+            return "(" + column + " IS NOT NULL OR (" + column + " IS NULL AND " + rest + "))";
+        }
+        args.add(value);
+        args.add(value);
+        return "(" + column + " > ? COLLATE NOCASE OR (" + column + " = ? COLLATE NOCASE AND " + rest + "))";
+    }
+
+    // Search query over the given persons columns
+    private Cursor searchCursor(SQLiteDatabase db, String term, int searchType, String columns, CancellationSignal cancellationSignal, QueryMetrics.Trace trace) {
         String searchQuery;
-        Cursor cursor;
+        String[] searchArgs = null;
         // Get all persons
         if(term == null || term.trim().length() == 0 ){
             if(searchType==0){
-                cursor = db.query(table_PERSONS, table_PERSONS_COLUMNS, "", null, null, null, persons_DATE + " COLLATE NOCASE DESC, " + persons_LASTN + " COLLATE NOCASE ASC, " + persons_FIRSTN + " COLLATE NOCASE ASC");
+                searchQuery = "SELECT " + columns + " FROM persons ORDER BY date DESC, lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
             }else if(searchType==1) {
-                cursor = db.query(table_PERSONS, table_PERSONS_COLUMNS, "", null, null, null, persons_FIRSTN + " COLLATE NOCASE ASC, " + persons_LASTN + " COLLATE NOCASE ASC");
+                searchQuery = "SELECT " + columns + " FROM persons ORDER BY firstN COLLATE NOCASE ASC, lastN COLLATE NOCASE ASC";
             }else{
-                cursor = db.query(table_PERSONS, table_PERSONS_COLUMNS, "", null, null, null, persons_LASTN + " COLLATE NOCASE ASC, " + persons_FIRSTN + " COLLATE NOCASE ASC");
+                searchQuery = "SELECT " + columns + " FROM persons ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
             }
         }else {
+            // prefix MATCH expression for the full text searches, null if the term has nothing to index
+            String matchQuery = buildMatchQuery(term);
             switch (searchType) {
                 case 0:
-                    searchQuery = "SELECT * FROM persons WHERE `date` LIKE ? ORDER BY date COLLATE NOCASE DESC ,lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
-                    cursor = db.rawQuery(searchQuery, new String[]{"%" + term + "%"});
+                    DateRange range = DateRange.parse(term);
+                    if (range != null) {
+                        searchQuery = "SELECT " + columns + " FROM persons WHERE date >= ? AND date < ? ORDER BY date DESC, lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                        searchArgs = new String[]{String.valueOf(range.from), String.valueOf(range.to)};
+                    } else {
+                        // not a date range yet, e.g. part way through typing one, so match the local date text
+                        searchQuery = "SELECT " + columns + " FROM persons WHERE strftime('%Y-%m-%d %H:%M:%S', date / 1000, 'unixepoch', 'localtime') LIKE ? ORDER BY date DESC, lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                        searchArgs = new String[]{"%" + term + "%"};
+                    }
                     break;
                 case 1:
-                    searchQuery = "SELECT * FROM persons WHERE (firstN || ' ' || lastN) LIKE ? ORDER BY (firstN || ' ' || lastN) = ? COLLATE NOCASE DESC, (firstN || ' ' || lastN) LIKE ? DESC, firstN COLLATE NOCASE ASC, lastN COLLATE NOCASE ASC";
-                    cursor = db.rawQuery(searchQuery, new String[]{"%" + term.toLowerCase() + "%", term.toLowerCase(), "%" + term.toLowerCase() + "%"});
+                    // a prefix of "first last" or "last first" is a range scan on the key indexes, words
+                    // anywhere in the name, like a middle name, still come from the FTS index
+                    String nameKey = NameKeys.normalize(term);
+                    String nameKeyEnd = NameKeys.prefixEnd(nameKey);
+                    String nameOrder = " ORDER BY firstLastKey = ? DESC, firstLastKey ASC, persons.id ASC";
+                    if (nameKey.length() == 0) {
+                        // nothing left of the term once normalized
+                        searchQuery = "SELECT " + columns + " FROM persons" + nameOrder;
+                        searchArgs = new String[]{nameKey};
+                    } else if (nameKeyEnd == null) {
+                        // a key of only U+10FFFF has no end, every key from it on matches
+                        String keyRange = "(firstLastKey >= ? OR lastFirstKey >= ?)";
+                        if (matchQuery == null) {
+                            searchQuery = "SELECT " + columns + " FROM persons WHERE " + keyRange + nameOrder;
+                            searchArgs = new String[]{nameKey, nameKey, nameKey};
+                        } else {
+                            searchQuery = "SELECT " + columns + " FROM persons WHERE " + keyRange + " OR persons.id IN (SELECT docid FROM persons_fts WHERE persons_fts.name MATCH ?)" + nameOrder;
+                            searchArgs = new String[]{nameKey, nameKey, matchQuery, nameKey};
+                        }
+                    } else if (matchQuery == null) {
+                        searchQuery = "SELECT " + columns + " FROM persons WHERE (firstLastKey >= ? AND firstLastKey < ?) OR (lastFirstKey >= ? AND lastFirstKey < ?)" + nameOrder;
+                        searchArgs = new String[]{nameKey, nameKeyEnd, nameKey, nameKeyEnd, nameKey};
+                    } else {
+                        searchQuery = "SELECT " + columns + " FROM persons WHERE (firstLastKey >= ? AND firstLastKey < ?) OR (lastFirstKey >= ? AND lastFirstKey < ?) OR persons.id IN (SELECT docid FROM persons_fts WHERE persons_fts.name MATCH ?)" + nameOrder;
+                        searchArgs = new String[]{nameKey, nameKeyEnd, nameKey, nameKeyEnd, matchQuery, nameKey};
+                    }
                     break;
                 case 2:
-                    searchQuery = "SELECT DISTINCT persons.* FROM ((persons_keywords INNER JOIN keywords ON keywords.id = persons_keywords.keyword_id AND keywords.keyword LIKE ?) INNER JOIN persons ON persons.id = persons_keywords.person_id ) ORDER BY  keywords.keyword = ? DESC ,keywords.keyword LIKE ? DESC, lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
-                    cursor = db.rawQuery(searchQuery, new String[]{"%" + term + "%", term, "%" + term + "%"});
+                    searchQuery = "SELECT DISTINCT " + columns + " FROM ((persons_keywords INNER JOIN keywords ON keywords.id = persons_keywords.keyword_id AND keywords.keyword LIKE ?) INNER JOIN persons ON persons.id = persons_keywords.person_id ) ORDER BY  keywords.keyword = ? DESC ,keywords.keyword LIKE ? DESC, lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                    searchArgs = new String[]{"%" + term + "%", term, "%" + term + "%"};
                     break;
                 case 3:
-                    searchQuery = "SELECT * FROM persons WHERE `desc` LIKE ? ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
-                    cursor = db.rawQuery(searchQuery, new String[]{"%" + term + "%"});
+                    if (matchQuery == null) {
+                        searchQuery = "SELECT " + columns + " FROM persons WHERE `desc` LIKE ? ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                        searchArgs = new String[]{"%" + term + "%"};
+                    } else {
+                        searchQuery = "SELECT " + columns + " FROM persons INNER JOIN persons_fts ON persons_fts.docid = persons.id WHERE persons_fts.description MATCH ? ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                        searchArgs = new String[]{matchQuery};
+                    }
                     break;
                 case 4:
-                    searchQuery = "SELECT * FROM persons WHERE interests LIKE ? ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
-                    cursor = db.rawQuery(searchQuery, new String[]{"%" + term + "%"});
+                    if (matchQuery == null) {
+                        searchQuery = "SELECT " + columns + " FROM persons WHERE interests LIKE ? ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                        searchArgs = new String[]{"%" + term + "%"};
+                    } else {
+                        searchQuery = "SELECT " + columns + " FROM persons INNER JOIN persons_fts ON persons_fts.docid = persons.id WHERE persons_fts.interests MATCH ? ORDER BY lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+                        searchArgs = new String[]{matchQuery};
+                    }
                     break;
                 default:
                     throw new RuntimeException("Invalid Toggle State: " + searchType);
@@ -168,88 +661,254 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
 
         }
 
-        // parse all results
-        Person person;
-        if (cursor.moveToFirst()) {
-            do {
-                person = new Person();
-                person.setId(Integer.parseInt(cursor.getString(0)));
-                person.setFirstName(cursor.getString(1));
-                person.setLastName(cursor.getString(2));
-                person.setDescription(cursor.getString(3));
-                person.setInterests(cursor.getString(4));
-
-                String dateString = cursor.getString(5);
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
-                try {
-                    Date date = dateFormat.parse(dateString);
-                    person.setDate(date);
-                }catch (ParseException e) {
-                    //handle exception
-                }
+        trace.query(searchQuery, searchArgs);
+        return db.rawQuery(searchQuery, searchArgs, cancellationSignal);
+    }
 
-                String keywords_query = "SELECT keywords.keyword FROM keywords LEFT JOIN persons_keywords ON keywords.id = persons_keywords.keyword_id WHERE persons_keywords.person_id = ?";
-                Cursor cursor_keywords = db.rawQuery(keywords_query, new String[]{String.valueOf(person.getId())});
-                if (cursor_keywords.moveToFirst()) {
-                    do {
-                        person.addKeyword(cursor_keywords.getString(0));
-                    } while (cursor_keywords.moveToNext());
-                }
-                cursor_keywords.close();
+    // Persons met in [from, to), most recent first, using the date index
+    public List<Person> getPersonsMetBetween(long from, long to) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getPersonsMetBetween");
+        String searchQuery = "SELECT * FROM persons WHERE date >= ? AND date < ? ORDER BY date DESC, lastN COLLATE NOCASE ASC, firstN COLLATE NOCASE ASC";
+        String[] searchArgs = new String[]{String.valueOf(from), String.valueOf(to)};
+        trace.query(searchQuery, searchArgs);
+        List<Person> persons = readPersons(db.rawQuery(searchQuery, searchArgs));
 
-                // Add person to persons
-                persons.add(person);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
+        this.loadKeywords(db, persons, false, null);
+        metrics.end(db, trace, persons.size());
         return persons;
+    }
 
+    // Every person once per keyword (once with a NULL keyword when it has none), in id order, for
+    // exports that write each person as they walk the cursor. Columns: id, firstN, lastN, desc, interests, date, keyword
+    public Cursor queryPersonsWithKeywords() {
+        return this.getWritableDatabase().rawQuery("SELECT persons.id, persons.firstN, persons.lastN, persons.`desc`, persons.interests, persons.date, keywords.keyword FROM persons LEFT JOIN persons_keywords ON persons_keywords.person_id = persons.id LEFT JOIN keywords ON keywords.id = persons_keywords.keyword_id ORDER BY persons.id", null);
+    }
 
+    public int getPersonCount() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getPersonCount");
+        int count = (int) DatabaseUtils.queryNumEntries(db, table_PERSONS);
+        metrics.end(db, trace, 1);
+        return count;
     }
 
     public List<Person> getAllPersons() {
-        List<Person> persons = new LinkedList<>();
-
         // get reference of the NamesDB database
         SQLiteDatabase db = this.getWritableDatabase();
+        QueryMetrics.Trace trace = metrics.begin("getAllPersons");
         // Get all persons
-        Cursor cursor = db.query(table_PERSONS, table_PERSONS_COLUMNS, "", null, null, null, persons_LASTN+" COLLATE NOCASE ASC, "+persons_FIRSTN+" COLLATE NOCASE ASC");
+        String allQuery = SQLiteQueryBuilder.buildQueryString(false, table_PERSONS, table_PERSONS_COLUMNS, null, null, null, persons_LASTN+" COLLATE NOCASE ASC, "+persons_FIRSTN+" COLLATE NOCASE ASC, "+persons_ID+" ASC", null);
+        trace.query(allQuery, null);
 
         // parse all results
-        Person person;
-        if (cursor.moveToFirst()) {
-            do {
-                person = new Person();
-                person.setId(Integer.parseInt(cursor.getString(0)));
-                person.setFirstName(cursor.getString(1));
-                person.setLastName(cursor.getString(2));
-                person.setDescription(cursor.getString(3));
-                person.setInterests(cursor.getString(4));
-
-                String dateString = cursor.getString(5);
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
-                try {
-                    Date date = dateFormat.parse(dateString);
-                    person.setDate(date);
-                }catch (ParseException e) {
-                    //handle exception
-                }
+        List<Person> persons = readPersons(db.rawQuery(allQuery, null));
 
-                String keywords_query = "SELECT keywords.keyword FROM keywords LEFT JOIN persons_keywords ON keywords.id = persons_keywords.keyword_id WHERE persons_keywords.person_id = ?";
-                Cursor cursor_keywords = db.rawQuery(keywords_query, new String[]{String.valueOf(person.getId())});
-                if (cursor_keywords.moveToFirst()) {
-                    do {
-                        person.addKeyword(cursor_keywords.getString(0));
-                    } while (cursor_keywords.moveToNext());
+        // every person is in the list so fetch all keyword links in one pass
+        this.loadKeywords(db, persons, true, null);
+        metrics.end(db, trace, persons.size());
+        return persons;
+    }
+
+    // Read every row of a persons cursor into a list sized for it, then close the cursor
+    private static List<Person> readPersons(Cursor cursor) {
+        try {
+            PersonMapper mapper = new PersonMapper(cursor);
+            List<Person> persons = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                persons.add(mapper.read());
+            }
+            return persons;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Columns read for list rows, qualified because searches join tables with the same column names
+    private static String rowColumns(int searchType) {
+        String columns = "persons.id AS id, persons.firstN AS firstN, persons.lastN AS lastN, persons.date AS date";
+        switch (searchType) {
+            case 1:
+            case 3:
+                return columns + ", persons.`desc` AS `desc`";
+            case 4:
+                return columns + ", persons.interests AS interests";
+            default:
+                return columns;
+        }
+    }
+
+    private static List<PersonRow> readRows(Cursor cursor, int searchType) {
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(persons_ID);
+            int firstNColumn = cursor.getColumnIndexOrThrow(persons_FIRSTN);
+            int lastNColumn = cursor.getColumnIndexOrThrow(persons_LASTN);
+            int dateColumn = cursor.getColumnIndexOrThrow(persons_DATE);
+            int otherColumn = searchType == 4 ? cursor.getColumnIndexOrThrow(persons_INTERESTS) : cursor.getColumnIndex(persons_DESC);
+            List<PersonRow> rows = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                rows.add(new PersonRow(
+                        cursor.getInt(idColumn),
+                        cursor.getString(firstNColumn),
+                        cursor.getString(lastNColumn),
+                        cursor.isNull(dateColumn) ? PersonRow.NO_DATE : cursor.getLong(dateColumn),
+                        otherColumn == -1 ? null : cursor.getString(otherColumn)));
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Maps the current row of a cursor over persons columns, column indexes are looked up once per cursor
+    private static class PersonMapper {
+        private final Cursor cursor;
+        private final int idColumn;
+        private final int firstNColumn;
+        private final int lastNColumn;
+        private final int descColumn;
+        private final int interestsColumn;
+        private final int dateColumn;
+
+        PersonMapper(Cursor cursor) {
+            this.cursor = cursor;
+            this.idColumn = cursor.getColumnIndexOrThrow(persons_ID);
+            this.firstNColumn = cursor.getColumnIndexOrThrow(persons_FIRSTN);
+            this.lastNColumn = cursor.getColumnIndexOrThrow(persons_LASTN);
+            this.descColumn = cursor.getColumnIndexOrThrow(persons_DESC);
+            this.interestsColumn = cursor.getColumnIndexOrThrow(persons_INTERESTS);
+            this.dateColumn = cursor.getColumnIndexOrThrow(persons_DATE);
+        }
+
+        Person read() {
+            Person person = new Person();
+            person.setId(cursor.getInt(idColumn));
+            person.setFirstName(cursor.getString(firstNColumn));
+            person.setLastName(cursor.getString(lastNColumn));
+            person.setDescription(cursor.getString(descColumn));
+            person.setInterests(cursor.getString(interestsColumn));
+            // epoch millis, nothing to parse
+            if (!cursor.isNull(dateColumn)) {
+                person.setDate(new Date(cursor.getLong(dateColumn)));
+            }
+            return person;
+        }
+    }
+
+    // Turn a search term into an FTS prefix query, e.g. "jo sm" -> "jo*" "sm*"
+    static String buildMatchQuery(String term) {
+        List<String> tokens = searchTokens(term);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        StringBuilder matchQuery = new StringBuilder();
+        for (String token : tokens) {
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append('"').append(token).append("*\"");
+        }
+        return matchQuery.toString();
+    }
+
+    // Split text into terms the way the FTS "simple" tokenizer does: runs of ASCII letters and digits
+    // or non-ASCII characters, with ASCII folded to lower case
+    static List<String> searchTokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (c >= 128) {
+                token.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    // Attach keywords to a list of persons without a query per person
+    private void loadKeywords(SQLiteDatabase db, List<Person> persons, boolean allPersons, CancellationSignal cancellationSignal) {
+        if (persons.isEmpty()) {
+            return;
+        }
+        int[] ids = null;
+        if (!allPersons) {
+            ids = new int[persons.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = persons.get(i).getId();
+            }
+        }
+        SparseArray<List<String>> keywordsById = queryKeywords(db, ids, cancellationSignal);
+        for (Person person : persons) {
+            List<String> keywords = keywordsById.get(person.getId());
+            if (keywords != null) {
+                for (String keyword : keywords) {
+                    person.addKeyword(keyword);
                 }
-                cursor_keywords.close();
+            }
+        }
+    }
 
-                // Add person to persons
-                persons.add(person);
+    // Attach sorted keywords to list rows, for the keyword search where they are shown
+    private void loadRowKeywords(SQLiteDatabase db, List<PersonRow> rows, CancellationSignal cancellationSignal) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int[] ids = new int[rows.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rows.get(i).getId();
+        }
+        SparseArray<List<String>> keywordsById = queryKeywords(db, ids, cancellationSignal);
+        for (PersonRow row : rows) {
+            List<String> keywords = keywordsById.get(row.getId());
+            if (keywords != null) {
+                Collections.sort(keywords);
+                row.setKeywords(keywords.toArray(new String[keywords.size()]));
+            }
+        }
+    }
+
+    // Keywords of the given persons, or of everybody when ids is null, keyed by person id
+    private SparseArray<List<String>> queryKeywords(SQLiteDatabase db, int[] ids, CancellationSignal cancellationSignal) {
+        SparseArray<List<String>> keywordsById = new SparseArray<>();
+        String keywords_query = "SELECT persons_keywords.person_id, keywords.keyword, keywords.id FROM persons_keywords INNER JOIN keywords ON keywords.id = persons_keywords.keyword_id";
+        if (ids == null) {
+            addKeywordsFromCursor(db.rawQuery(keywords_query, null, cancellationSignal), keywordsById);
+            return keywordsById;
+        }
+
+        // SQLite limits the number of bound parameters so query the ids in chunks
+        for (int start = 0; start < ids.length; start += keywords_BATCH_SIZE) {
+            int end = Math.min(start + keywords_BATCH_SIZE, ids.length);
+            String[] args = new String[end - start];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                args[i - start] = String.valueOf(ids[i]);
+                placeholders.append(i == start ? "?" : ",?");
+            }
+            Cursor cursor = db.rawQuery(keywords_query + " WHERE persons_keywords.person_id IN (" + placeholders + ")", args, cancellationSignal);
+            addKeywordsFromCursor(cursor, keywordsById);
+        }
+        return keywordsById;
+    }
+
+    private void addKeywordsFromCursor(Cursor cursor, SparseArray<List<String>> keywordsById) {
+        if (cursor.moveToFirst()) {
+            do {
+                int personId = cursor.getInt(0);
+                List<String> keywords = keywordsById.get(personId);
+                if (keywords == null) {
+                    keywords = new ArrayList<>(4);
+                    keywordsById.put(personId, keywords);
+                }
+                keywords.add(keywordPool.intern(cursor.getInt(2), cursor.getString(1)));
             } while (cursor.moveToNext());
         }
         cursor.close();
-        return persons;
     }
 
     public void updatePerson(Person person) {
@@ -263,52 +922,41 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
         values.put(persons_LASTN, person.getLastName());
         values.put(persons_DESC, person.getDescription());
         values.put(persons_INTERESTS, person.getInterests());
+        values.put(persons_FIRST_LAST_KEY, NameKeys.firstLast(person.getFirstName(), person.getLastName()));
+        values.put(persons_LAST_FIRST_KEY, NameKeys.lastFirst(person.getFirstName(), person.getLastName()));
 
         Integer nameID = person.getId();
+        Map<String, Integer> keywordDeltas = new HashMap<>();
+        QueryMetrics.Trace trace = metrics.begin("updatePerson");
 
-        // update
-        db.update(table_PERSONS, values, persons_ID + " = ?", new String[]{String.valueOf(nameID)});
-
-        //delete keywords
-        db.delete(table_PERSONS_KEYWORDS, persons_keywords_NAME_ID + " = ?", new String[] { String.valueOf(nameID) });
-
-        //insert keywords
-        List<String> keywordsList = person.getKeywords();
-        for (int i = 0; i < keywordsList.size(); i++) {
-            if(!keywordsList.get(i).trim().equals("")) {
-                Cursor cursor_keywords = db.query(table_KEYWORDS, table_KEYWORDS_COLUMNS, "keyword = ?", new String[]{keywordsList.get(i)}, null, null, null, null);
-                long keywordID;
-                if (cursor_keywords.moveToFirst()) {
-                    keywordID = cursor_keywords.getInt(0);
-                } else {
-                    ContentValues keyword = new ContentValues();
-                    keyword.put(keywords_KEYWORD, keywordsList.get(i));
-                    keywordID = db.insert(table_KEYWORDS, null, keyword);
-                }
+        db.beginTransaction();
+        try {
+            List<String> oldKeywords = new ArrayList<>();
+            int[] oldKeywordIds = this.readKeywords(db, nameID, oldKeywords);
+            countKeywords(keywordDeltas, oldKeywords, -1);
+            countKeywords(keywordDeltas, person.getKeywords(), 1);
 
-                ContentValues name_keyword = new ContentValues();
-                name_keyword.put(persons_keywords_NAME_ID, nameID);
-                name_keyword.put(persons_keywords_KEYWORD_ID, keywordID);
-                db.insert(table_PERSONS_KEYWORDS, null, name_keyword);
-                cursor_keywords.close();
-            }
-        }
+            // update
+            db.update(table_PERSONS, values, persons_ID + " = ?", new String[]{String.valueOf(nameID)});
+
+            //delete keywords
+            db.delete(table_PERSONS_KEYWORDS, persons_keywords_NAME_ID + " = ?", new String[] { String.valueOf(nameID) });
+
+            //insert keywords
+            this.insertKeywords(db, nameID, person.getKeywords());
 
-        this.cleanKeywords(db);
-        db.close();
+            this.cleanKeywords(db, oldKeywordIds);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        this.updateKeywordIndex(keywordDeltas);
+        metrics.end(db, trace, 1);
     }
 
     // Deleting single person
     public void deletePerson(Person person) {
-
-        // get reference of the PersonDB database
-        SQLiteDatabase db = this.getWritableDatabase();
-
-        // delete person
-        db.delete(table_PERSONS, persons_ID + " = ?", new String[] { String.valueOf(person.getId()) });
-        db.delete(table_PERSONS_KEYWORDS, persons_keywords_NAME_ID + " = ?", new String[] { String.valueOf(person.getId()) });
-        this.cleanKeywords(db);
-        db.close();
+        this.deletePerson(person.getId());
     }
 
     // Deleting single person
@@ -317,56 +965,419 @@ public class NRSQLiteHelper extends SQLiteOpenHelper{
         // get reference of the PersonDB database
         SQLiteDatabase db = this.getWritableDatabase();
 
+        Map<String, Integer> keywordDeltas = new HashMap<>();
+        QueryMetrics.Trace trace = metrics.begin("deletePerson");
+
         // delete person
-        db.delete(table_PERSONS, persons_ID + " = ?", new String[] { String.valueOf(personId) });
-        db.delete(table_PERSONS_KEYWORDS, persons_keywords_NAME_ID + " = ?", new String[] { String.valueOf(personId) });
-        this.cleanKeywords(db);
-        db.close();
+        db.beginTransaction();
+        try {
+            List<String> oldKeywords = new ArrayList<>();
+            int[] oldKeywordIds = this.readKeywords(db, personId, oldKeywords);
+            countKeywords(keywordDeltas, oldKeywords, -1);
+            db.delete(table_PERSONS, persons_ID + " = ?", new String[] { String.valueOf(personId) });
+            db.delete(table_PERSONS_KEYWORDS, persons_keywords_NAME_ID + " = ?", new String[] { String.valueOf(personId) });
+            this.cleanKeywords(db, oldKeywordIds);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        this.updateKeywordIndex(keywordDeltas);
+        metrics.end(db, trace, 1);
     }
 
     public Person readPerson(int id) {
         // get reference of the NamesDB database
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor;
 
-        // get book query
-        cursor = db.query(table_PERSONS, table_PERSONS_COLUMNS, " id = ?", new String[] { String.valueOf(id) }, null, null, null, null);
+        QueryMetrics.Trace trace = metrics.begin("readPerson");
+        // get person query
+        Cursor cursor = db.query(table_PERSONS, table_PERSONS_COLUMNS, " id = ?", new String[] { String.valueOf(id) }, null, null, null, null);
+        List<Person> persons = readPersons(cursor);
+        if (persons.isEmpty()) {
+            throw new RuntimeException("Invalid Person read from database");
+        }
 
-        // if results !=null, parse the first one
-        if (cursor != null) {
-            cursor.moveToFirst();
+        this.loadKeywords(db, persons, false, null);
+        metrics.end(db, trace, 1);
+        return persons.get(0);
+    }
 
-            Person person = new Person();
-            person.setId(Integer.parseInt(cursor.getString(0)));
-            person.setFirstName(cursor.getString(1));
-            person.setLastName(cursor.getString(2));
-            person.setDescription(cursor.getString(3));
-            person.setInterests(cursor.getString(4));
+    // Copy the database file and its write ahead log to snapshot while holding the write lock, so no
+    // commit or checkpoint lands part way through. Opening the copy replays the log into it.
+    // Returns the change_log seq the copy includes, for markBackedUp once the copy is safely stored.
+    public long copyDatabaseFiles(File snapshot) throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        // move what the log can into the main file first so less of it is copied
+        Cursor checkpoint = db.rawQuery("PRAGMA wal_checkpoint", null);
+        checkpoint.moveToFirst();
+        checkpoint.close();
 
+        File database = new File(db.getPath());
+        File log = new File(db.getPath() + "-wal");
+        File snapshotLog = new File(snapshot.getPath() + "-wal");
+        QueryMetrics.Trace trace = metrics.begin("copyDatabaseFiles");
+        // the first full backup starts a chain, committed before the copy so the copy carries it
+        // and every change made after the copy is logged
+        db.execSQL("UPDATE backup_watermark SET chain = ? WHERE chain IS NULL", new Object[]{UUID.randomUUID().toString()});
+        long seq;
+        db.beginTransactionNonExclusive();
+        try {
+            copyFile(database, snapshot);
+            if (log.exists()) {
+                copyFile(log, snapshotLog);
+            }
+            seq = changeLogSeq(db, "main");
+        } finally {
+            // nothing was written, this only releases the lock
+            db.endTransaction();
+        }
+        metrics.end(db, trace, 0);
+        return seq;
+    }
 
-            String keywords_query = "SELECT keywords.keyword FROM keywords LEFT JOIN persons_keywords ON keywords.id = persons_keywords.keyword_id WHERE persons_keywords.person_id = ?";
-            cursor = db.rawQuery(keywords_query, new String[]{String.valueOf(id)});
+    // Merge the persons of an exported backup into this database, returning how many were added.
+    // Persons already here with the same names and date are skipped so importing twice adds nothing.
+    // The backup is attached and copied with a few INSERT ... SELECT statements in one transaction,
+    // the FTS triggers and indexes are kept up to date by the inserts themselves.
+    public int mergeBackup(File backup) {
+        QueryMetrics.Trace trace = metrics.begin("mergeBackup");
+        SQLiteDatabase importDb = this.openAttachConnection();
+        int imported;
+        try {
+            importDb.execSQL("ATTACH DATABASE ? AS backup", new Object[]{backup.getPath()});
+            importDb.beginTransaction();
+            try {
+                imported = this.mergeAttachedBackup(importDb);
+                importDb.setTransactionSuccessful();
+            } finally {
+                importDb.endTransaction();
+            }
+        } finally {
+            // closing detaches the backup
+            importDb.close();
+        }
 
-            if (cursor.moveToFirst()) {
-                do {
-                    person.addKeyword(cursor.getString(0));
-                } while (cursor.moveToNext());
+        // usage counts changed for many keywords, read them again when next needed
+        synchronized (this) {
+            keywordIndex = null;
+        }
+        metrics.end(this.getWritableDatabase(), trace, imported);
+        return imported;
+    }
+
+    private int mergeAttachedBackup(SQLiteDatabase db) {
+        long backupVersion = DatabaseUtils.longForQuery(db, "PRAGMA backup.user_version", null);
+        if (backupVersion < 4 || backupVersion > database_VERSION) {
+            throw new RuntimeException("Unsupported backup database version: " + backupVersion);
+        }
+        // dates were text before version 7
+        String backupDate = backupVersion < 7 ? "CAST(strftime('%s', b.date) AS INTEGER) * 1000" : "b.date";
+
+        // new ids for the persons to import, in backup order, offset past every id used here
+        db.execSQL("DROP TABLE IF EXISTS temp.import_persons");
+        db.execSQL("CREATE TEMP TABLE import_persons ( row INTEGER PRIMARY KEY, backup_id INTEGER UNIQUE )");
+        db.execSQL("INSERT INTO import_persons (backup_id) SELECT b.id FROM backup.persons b WHERE NOT EXISTS (SELECT 1 FROM main.persons p WHERE p.date IS " + backupDate + " AND p.firstN IS b.firstN AND p.lastN IS b.lastN) ORDER BY b.id");
+        int imported = (int) DatabaseUtils.queryNumEntries(db, "temp.import_persons");
+        if (imported > 0) {
+            long idOffset = DatabaseUtils.longForQuery(db, "SELECT MAX(IFNULL((SELECT seq FROM main.sqlite_sequence WHERE name = 'persons'), 0), IFNULL((SELECT MAX(id) FROM main.persons), 0))", null);
+
+            db.execSQL("INSERT INTO main.persons (id, firstN, lastN, `desc`, interests, date) SELECT i.row + ?, b.firstN, b.lastN, b.`desc`, b.interests, " + backupDate + " FROM import_persons i INNER JOIN backup.persons b ON b.id = i.backup_id ORDER BY i.row", new Object[]{idOffset});
+
+            // keywords of the imported persons, the unique keyword index drops ones already here
+            db.execSQL("INSERT OR IGNORE INTO main.keywords (keyword) SELECT DISTINCT bk.keyword FROM import_persons i INNER JOIN backup.persons_keywords bpk ON bpk.person_id = i.backup_id INNER JOIN backup.keywords bk ON bk.id = bpk.keyword_id WHERE bk.keyword IS NOT NULL");
+            db.execSQL("INSERT OR IGNORE INTO main.persons_keywords (person_id, keyword_id) SELECT i.row + ?, k.id FROM import_persons i INNER JOIN backup.persons_keywords bpk ON bpk.person_id = i.backup_id INNER JOIN backup.keywords bk ON bk.id = bpk.keyword_id INNER JOIN main.keywords k ON k.keyword = bk.keyword", new Object[]{idOffset});
+            this.fillNameKeys(db);
+        }
+        db.execSQL("DROP TABLE temp.import_persons");
+        return imported;
+    }
+
+    // A connection of its own for work that attaches other databases: an attached database belongs to
+    // the connection that attached it, while statements on the shared helper may run on any of its WAL connections.
+    // It opens in WAL mode like the helper, otherwise opening would try to take the file out of WAL under the helper.
+    private SQLiteDatabase openAttachConnection() {
+        return SQLiteDatabase.openDatabase(this.getWritableDatabase().getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+    }
+
+    // Highest change_log seq ever handed out in schema, 0 when nothing was logged
+    private static long changeLogSeq(SQLiteDatabase db, String schema) {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL((SELECT seq FROM " + schema + ".sqlite_sequence WHERE name = 'change_log'), 0)", null);
+    }
+
+    // A backup up to seq is stored, so later deltas start from there and older log entries can go
+    public void markBackedUp(long seq) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE backup_watermark SET seq = ?", new Object[]{seq});
+            db.execSQL("DELETE FROM change_log WHERE seq <= ?", new Object[]{seq});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Whether a full backup was stored that exportChanges can take changes from
+    public boolean hasFullBackup() {
+        return DatabaseUtils.longForQuery(this.getWritableDatabase(), "SELECT seq IS NOT NULL FROM backup_watermark", null) == 1;
+    }
+
+    // A full backup failed before any backup of its chain was stored, stop logging until the next one
+    public void abandonBackup() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM change_log WHERE (SELECT seq FROM backup_watermark) IS NULL");
+            db.execSQL("UPDATE backup_watermark SET chain = NULL WHERE seq IS NULL");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Write the persons and keywords changed since the last backup to a new database file, returning how
+    // many rows it carries. Changed rows are copied as they are now, rows that no longer exist are listed
+    // as deleted by their ids being in changed_persons or changed_keywords without a row.
+    // Throws IllegalStateException when there has been no full backup to start the deltas from.
+    public int exportChanges(File delta) {
+        QueryMetrics.Trace trace = metrics.begin("exportChanges");
+        delta.delete();
+        SQLiteDatabase exportDb = this.openAttachConnection();
+        int rows;
+        long to;
+        try {
+            exportDb.execSQL("ATTACH DATABASE ? AS delta", new Object[]{delta.getPath()});
+            // exclusive, so the rows copied and the seq recorded agree
+            exportDb.beginTransaction();
+            try {
+                Cursor watermark = exportDb.rawQuery("SELECT seq, chain FROM main.backup_watermark", null);
+                Long from;
+                String chain;
+                try {
+                    from = watermark.moveToFirst() && !watermark.isNull(0) ? watermark.getLong(0) : null;
+                    chain = from != null ? watermark.getString(1) : null;
+                } finally {
+                    watermark.close();
+                }
+                if (from == null) {
+                    throw new IllegalStateException("No full backup to take changes from");
+                }
+                to = changeLogSeq(exportDb, "main");
+
+                exportDb.execSQL("CREATE TABLE delta.delta_info ( from_seq INTEGER, to_seq INTEGER, version INTEGER, chain TEXT )");
+                exportDb.execSQL("CREATE TABLE delta.changed_persons ( id INTEGER PRIMARY KEY )");
+                exportDb.execSQL("CREATE TABLE delta.changed_keywords ( id INTEGER PRIMARY KEY )");
+                exportDb.execSQL("CREATE TABLE delta.persons ( id INTEGER PRIMARY KEY, firstN TEXT, lastN TEXT, desc TEXT, interests TEXT, date INTEGER )");
+                exportDb.execSQL("CREATE TABLE delta.keywords ( id INTEGER PRIMARY KEY, keyword TEXT )");
+                exportDb.execSQL("CREATE TABLE delta.persons_keywords ( person_id INTEGER, keyword_id INTEGER )");
+
+                exportDb.execSQL("INSERT INTO delta.delta_info (from_seq, to_seq, version, chain) VALUES (?, ?, ?, ?)", new Object[]{from, to, database_VERSION, chain});
+                exportDb.execSQL("INSERT OR IGNORE INTO delta.changed_persons (id) SELECT row_id FROM main.change_log WHERE table_name = 'persons' AND seq > ?", new Object[]{from});
+                exportDb.execSQL("INSERT OR IGNORE INTO delta.changed_keywords (id) SELECT row_id FROM main.change_log WHERE table_name = 'keywords' AND seq > ?", new Object[]{from});
+                exportDb.execSQL("INSERT INTO delta.persons (id, firstN, lastN, `desc`, interests, date) SELECT p.id, p.firstN, p.lastN, p.`desc`, p.interests, p.date FROM delta.changed_persons c INNER JOIN main.persons p ON p.id = c.id");
+                exportDb.execSQL("INSERT INTO delta.keywords (id, keyword) SELECT k.id, k.keyword FROM delta.changed_keywords c INNER JOIN main.keywords k ON k.id = c.id");
+                exportDb.execSQL("INSERT INTO delta.persons_keywords (person_id, keyword_id) SELECT pk.person_id, pk.keyword_id FROM delta.changed_persons c INNER JOIN main.persons_keywords pk ON pk.person_id = c.id");
+                rows = (int) (DatabaseUtils.queryNumEntries(exportDb, "delta.changed_persons") + DatabaseUtils.queryNumEntries(exportDb, "delta.changed_keywords"));
+                exportDb.setTransactionSuccessful();
+            } finally {
+                exportDb.endTransaction();
             }
+        } finally {
+            exportDb.close();
+        }
+        this.markBackedUp(to);
+        metrics.end(this.getWritableDatabase(), trace, rows);
+        return rows;
+    }
 
-            cursor.close();
-            db.close();
-            return person;
+    // Replace every person with those in a full backup, then apply the deltas taken after it in order.
+    // Only deltas of the backup's chain are used, those of other backups or of the timeline before an
+    // earlier restore can share its seq numbers. Deltas that end before the backup are skipped and a gap
+    // in the chain ends the restore there. Each step commits on its own so a failure leaves the state of
+    // the last whole step. Returns the number of deltas applied.
+    public int restoreBackup(File backup, List<File> deltas) {
+        QueryMetrics.Trace trace = metrics.begin("restoreBackup");
+        SQLiteDatabase restoreDb = this.openAttachConnection();
+        int applied = 0;
+        try {
+            BackupPoint base = this.restoreAttachedBackup(restoreDb, backup);
+            long seq = base.seq;
 
-        } else {
-            throw new RuntimeException("Invalid Person read from database");
+            // read each delta's range, then apply them by the seq they reach
+            final List<long[]> ranges = new ArrayList<>();
+            for (int i = 0; i < deltas.size() && base.chain != null; i++) {
+                restoreDb.execSQL("ATTACH DATABASE ? AS delta", new Object[]{deltas.get(i).getPath()});
+                try {
+                    Cursor info = restoreDb.rawQuery("SELECT from_seq, to_seq FROM delta.delta_info WHERE chain = ?", new String[]{base.chain});
+                    try {
+                        if (info.moveToFirst()) {
+                            ranges.add(new long[]{info.getLong(0), info.getLong(1), i});
+                        }
+                    } finally {
+                        info.close();
+                    }
+                } finally {
+                    restoreDb.execSQL("DETACH DATABASE delta");
+                }
+            }
+            Collections.sort(ranges, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return a[1] == b[1] ? 0 : (a[1] < b[1] ? -1 : 1);
+                }
+            });
+
+            for (long[] range : ranges) {
+                if (range[1] <= seq) {
+                    continue;
+                }
+                if (range[0] > seq) {
+                    break;
+                }
+                restoreDb.execSQL("ATTACH DATABASE ? AS delta", new Object[]{deltas.get((int) range[2]).getPath()});
+                try {
+                    restoreDb.beginTransaction();
+                    try {
+                        this.applyAttachedDelta(restoreDb);
+                        restoreDb.setTransactionSuccessful();
+                    } finally {
+                        restoreDb.endTransaction();
+                    }
+                } finally {
+                    restoreDb.execSQL("DETACH DATABASE delta");
+                }
+                seq = range[1];
+                applied++;
+            }
+        } finally {
+            restoreDb.close();
+            synchronized (this) {
+                keywordIndex = null;
+            }
+            // every keyword was replaced and their ids may now name other keywords
+            keywordPool.clear();
         }
+        metrics.end(this.getWritableDatabase(), trace, applied);
+        return applied;
+    }
+
+    // Where a full backup was taken: the change_log seq it includes and its chain, null when it has none
+    private static class BackupPoint {
+        final long seq;
+        final String chain;
 
+        BackupPoint(long seq, String chain) {
+            this.seq = seq;
+            this.chain = chain;
+        }
     }
 
-    public void cleanKeywords(SQLiteDatabase db) {
-        // get reference of the NamesDB database
-        String keywords_query = "DELETE FROM keywords WHERE id IN (SELECT keywords.id FROM keywords LEFT JOIN persons_keywords ON keywords.id = persons_keywords.keyword_id WHERE persons_keywords.person_id IS NULL)";
-        db.execSQL(keywords_query);
+    private BackupPoint restoreAttachedBackup(SQLiteDatabase db, File backup) {
+        db.execSQL("ATTACH DATABASE ? AS backup", new Object[]{backup.getPath()});
+        try {
+            long backupVersion = DatabaseUtils.longForQuery(db, "PRAGMA backup.user_version", null);
+            // keywords may repeat before version 6, merge those backups instead
+            if (backupVersion < 6 || backupVersion > database_VERSION) {
+                throw new RuntimeException("Unsupported backup database version: " + backupVersion);
+            }
+            String backupDate = backupVersion < 7 ? "CAST(strftime('%s', date) AS INTEGER) * 1000" : "date";
+            BackupPoint point = backupVersion < 9 ? new BackupPoint(0, null)
+                    : new BackupPoint(changeLogSeq(db, "backup"), DatabaseUtils.stringForQuery(db, "SELECT chain FROM backup.backup_watermark", null));
+
+            db.beginTransaction();
+            try {
+                // first, so none of the rewrite below is logged
+                this.stopChangeLog(db);
+                db.execSQL("DELETE FROM main.persons_keywords");
+                db.execSQL("DELETE FROM main.keywords");
+                db.execSQL("DELETE FROM main.persons");
+                db.execSQL("INSERT INTO main.persons (id, firstN, lastN, `desc`, interests, date) SELECT id, firstN, lastN, `desc`, interests, " + backupDate + " FROM backup.persons");
+                db.execSQL("INSERT INTO main.keywords (id, keyword) SELECT id, keyword FROM backup.keywords");
+                db.execSQL("INSERT OR IGNORE INTO main.persons_keywords (person_id, keyword_id) SELECT person_id, keyword_id FROM backup.persons_keywords");
+                this.fillNameKeys(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return point;
+        } finally {
+            db.execSQL("DETACH DATABASE backup");
+        }
+    }
+
+    private void applyAttachedDelta(SQLiteDatabase db) {
+        // deleted and reinserted rather than replaced so the FTS triggers see both halves
+        db.execSQL("DELETE FROM main.persons_keywords WHERE person_id IN (SELECT id FROM delta.changed_persons)");
+        db.execSQL("DELETE FROM main.persons WHERE id IN (SELECT id FROM delta.changed_persons)");
+        db.execSQL("INSERT INTO main.persons (id, firstN, lastN, `desc`, interests, date) SELECT id, firstN, lastN, `desc`, interests, date FROM delta.persons");
+        db.execSQL("DELETE FROM main.keywords WHERE id IN (SELECT id FROM delta.changed_keywords)");
+        db.execSQL("INSERT INTO main.keywords (id, keyword) SELECT id, keyword FROM delta.keywords");
+        db.execSQL("INSERT OR IGNORE INTO main.persons_keywords (person_id, keyword_id) SELECT person_id, keyword_id FROM delta.persons_keywords");
+        this.fillNameKeys(db);
+    }
+
+    // Changes made after a restore continue neither the restored chain, whose later deltas hold other
+    // changes with the same seq numbers, nor the one before it. Logging stops until the next full backup
+    // starts a new chain.
+    private void stopChangeLog(SQLiteDatabase db) {
+        db.execSQL("UPDATE main.backup_watermark SET seq = NULL, chain = NULL");
+        db.execSQL("DELETE FROM main.change_log");
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to);
+            try {
+                FileChannel source = in.getChannel();
+                FileChannel target = out.getChannel();
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // The keywords linked to one person in a single query through the person_id, keyword_id index:
+    // their ids are returned and their text is added to keywords
+    private int[] readKeywords(SQLiteDatabase db, int personId, List<String> keywords) {
+        Cursor cursor = db.rawQuery("SELECT keywords.id, keywords.keyword FROM persons_keywords INNER JOIN keywords ON keywords.id = persons_keywords.keyword_id WHERE persons_keywords.person_id = ?",
+                new String[]{String.valueOf(personId)});
+        try {
+            int[] keywordIds = new int[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                keywordIds[i] = cursor.getInt(0);
+                keywords.add(keywordPool.intern(keywordIds[i], cursor.getString(1)));
+            }
+            return keywordIds;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Delete those of the given keywords no person links to any more. Only the touched keywords
+    // are checked, each with one lookup in the keyword_id, person_id index. Deleted keywords leave
+    // the pool, if the transaction rolls back they are simply pooled again when next read.
+    private void cleanKeywords(SQLiteDatabase db, int[] keywordIds) {
+        SQLiteStatement deleteUnused = db.compileStatement("DELETE FROM keywords WHERE id = ? AND NOT EXISTS (SELECT 1 FROM persons_keywords WHERE keyword_id = ?)");
+        try {
+            for (int keywordId : keywordIds) {
+                deleteUnused.bindLong(1, keywordId);
+                deleteUnused.bindLong(2, keywordId);
+                if (deleteUnused.executeUpdateDelete() > 0) {
+                    keywordPool.forget(keywordId);
+                }
+            }
+        } finally {
+            deleteUnused.close();
+        }
     }
 }
 
@@ -0,0 +1,87 @@
+package com.thomaspreece.nameremember;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Search keys for names: lowercased, accents removed and runs of spaces collapsed, so a name typed
+// with or without its accents gives the same key. Stored as persons.firstLastKey ("first last") and
+// persons.lastFirstKey ("last first"), which the name search range scans by prefix.
+public class NameKeys {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private NameKeys() {}
+
+    public static String firstLast(String firstName, String lastName) {
+        return join(normalize(firstName), normalize(lastName));
+    }
+
+    public static String lastFirst(String firstName, String lastName) {
+        return join(normalize(lastName), normalize(firstName));
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String folded = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        folded = SPACES.matcher(folded.toLowerCase(Locale.UK)).replaceAll(" ").trim();
+        // letters that don't decompose into a base letter and a mark
+        StringBuilder key = null;
+        for (int i = 0; i < folded.length(); i++) {
+            String replacement = fold(folded.charAt(i));
+            if (replacement != null && key == null) {
+                key = new StringBuilder(folded.length() + 4).append(folded, 0, i);
+            }
+            if (key != null) {
+                key.append(replacement != null ? replacement : String.valueOf(folded.charAt(i)));
+            }
+        }
+        return key == null ? folded : key.toString();
+    }
+
+    // Smallest string greater than every string starting with prefix, the end of its range scan.
+    // Null when there is none, for an empty prefix or one made only of U+10FFFF.
+    public static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int last = prefix.codePointBefore(end);
+            end -= Character.charCount(last);
+            if (last < Character.MAX_CODE_POINT) {
+                int next = last + 1;
+                if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE) {
+                    next = Character.MAX_SURROGATE + 1;
+                }
+                return prefix.substring(0, end) + new String(Character.toChars(next));
+            }
+            // nothing follows the highest code point, so carry into the one before it
+        }
+        return null;
+    }
+
+    private static String join(String first, String second) {
+        if (first.length() == 0) {
+            return second;
+        } else if (second.length() == 0) {
+            return first;
+        }
+        return first + " " + second;
+    }
+
+    private static String fold(char c) {
+        switch (c) {
+            case '\u00df': return "ss";
+            case '\u00e6': return "ae";
+            case '\u00f8': return "o";
+            case '\u0153': return "oe";
+            case '\u0142': return "l";
+            case '\u0111': return "d";
+            case '\u00f0': return "d";
+            case '\u00fe': return "th";
+            case '\u0131': return "i";
+            default: return null;
+        }
+    }
+}
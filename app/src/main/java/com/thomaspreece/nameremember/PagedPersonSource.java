@@ -0,0 +1,137 @@
+package com.thomaspreece.nameremember;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+// Rows for all persons in getAllPersons order, loaded a page at a time as the list asks for them.
+// Only the most recently used pages are kept so memory follows what is on screen, not the book size.
+// Pages load on the given executor, rows not loaded yet show as placeholders until the listener is
+// told the page arrived. Each page is read on from the last row of the nearest page before it.
+public class PagedPersonSource implements PersonListAdapter.Source {
+
+    public interface Listener {
+        // A page of source arrived, its rows replace the placeholders shown so far
+        void onPageLoaded(PagedPersonSource source);
+        // Persons were deleted since size() was read, so the list should load a fresh source
+        void onPagesStale();
+    }
+
+    private static final int PAGE_SIZE = 50;
+    private static final int CACHED_PAGES = 4;
+
+    private final NRSQLiteHelper db;
+    private final ExecutorService loader;
+    private final Listener listener;
+    private final int size;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // main thread only from here on
+    private final LruCache<Integer, List<PersonRow>> pages = new LruCache<>(CACHED_PAGES);
+    // last row of every page loaded so far, kept after the page is dropped so paging can seek past it
+    private final SparseArray<PersonRow> pageEnds = new SparseArray<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private boolean stale = false;
+
+    public PagedPersonSource(NRSQLiteHelper db, ExecutorService loader, Listener listener) {
+        this.db = db;
+        this.loader = loader;
+        this.listener = listener;
+        this.size = db.getPersonCount();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PersonRow get(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        List<PersonRow> page = pages.get(pageIndex);
+        if (page == null) {
+            load(pageIndex);
+            return PersonRow.placeholder(position);
+        }
+        int offset = position - pageIndex * PAGE_SIZE;
+        if (offset >= page.size()) {
+            // Rows were deleted behind our back (restore, merge, another delete), so the page came back
+            // short. Show a placeholder for now and ask for a reload, but not from inside getView.
+            if (!stale) {
+                stale = true;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onPagesStale();
+                    }
+                });
+            }
+            return PersonRow.placeholder(position);
+        }
+        return page.get(offset);
+    }
+
+    @Override
+    public boolean replace(PersonRow row) {
+        // only safe while the sort key is unchanged, otherwise rows shift between pages
+        for (List<PersonRow> page : pages.snapshot().values()) {
+            for (int i = 0; i < page.size(); i++) {
+                PersonRow old = page.get(i);
+                if (old.getId() == row.getId()) {
+                    if (!sameText(old.getLastName(), row.getLastName()) || !sameText(old.getFirstName(), row.getFirstName())) {
+                        return false;
+                    }
+                    page.set(i, row);
+                    return true;
+                }
+            }
+        }
+        // not loaded yet, will be read fresh if its position didn't change, but that is unknown here
+        return false;
+    }
+
+    @Override
+    public boolean remove(int personId) {
+        // every later row moves up one
+        return false;
+    }
+
+    // Read a page on the loader, starting from the end of the nearest earlier page already read
+    private void load(final int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+        int known = pageIndex - 1;
+        while (known >= 0 && pageEnds.get(known) == null) {
+            known--;
+        }
+        final PersonRow after = known >= 0 ? pageEnds.get(known) : null;
+        final int skip = (pageIndex - known - 1) * PAGE_SIZE;
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<PersonRow> page = db.getPersonRowsPage(after, skip, PAGE_SIZE);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loading.remove(pageIndex);
+                        pages.put(pageIndex, page);
+                        if (!page.isEmpty()) {
+                            pageEnds.put(pageIndex, page.get(page.size() - 1));
+                        }
+                        listener.onPageLoaded(PagedPersonSource.this);
+                    }
+                });
+            }
+        });
+    }
+
+    private static boolean sameText(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
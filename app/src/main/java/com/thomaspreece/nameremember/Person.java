@@ -66,15 +66,17 @@ public class Person {
         }
     }
 
+    // Keep keywords sorted by inserting in place instead of sorting after every add
     public void addKeyword(String keyword) {
-        this.keywords.add(keyword);
-        Collections.sort(this.keywords);
+        int position = Collections.binarySearch(this.keywords, keyword);
+        this.keywords.add(position < 0 ? -position - 1 : position, keyword);
     }
 
     public String getDateTime() {
         DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, Locale.getDefault());
         return dateFormat.format(this.date);
     }
+    public Date getDate() {return this.date;}
     public void setDate(Date date) {this.date = date;}
 
     public int getId() {return this.id;}
@@ -42,8 +42,8 @@ public class PersonActivity extends AppCompatActivity {
         Intent intent = getIntent();
         id = intent.getIntExtra("person", -1);
 
-        // open the database of the application context
-        db = new NRSQLiteHelper(getApplicationContext());
+        // shared database of the application context
+        db = NRSQLiteHelper.getInstance(this);
 
         // read the book with "id" from the database
         selectedPerson = db.readPerson(id);
@@ -67,6 +67,10 @@ public class PersonActivity extends AppCompatActivity {
                             public void onClick(DialogInterface dialog, int which) {
 
                                 db.deletePerson(id);
+                                Intent result = new Intent();
+                                result.putExtra("change", "deleted");
+                                result.putExtra("changed", id);
+                                setResult(RESULT_OK, result);
                                 //Stop the activity
                                 PersonActivity.this.finish();
                             }
@@ -95,9 +99,15 @@ public class PersonActivity extends AppCompatActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+        //Edit was cancelled
+        if (resultCode != RESULT_OK) {
+            return;
+        }
 
         selectedPerson = db.readPerson(id);
         initializeViews();
+        //Pass the update on to the list
+        setResult(RESULT_OK, data);
     }
 
     public void initializeViews(){
@@ -0,0 +1,201 @@
+package com.thomaspreece.nameremember;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// List adapter for person rows that only builds text for the rows on screen. Rows come from a Source,
+// either a result list already in memory or pages loaded from the database as they are needed.
+public class PersonListAdapter extends BaseAdapter {
+
+    public interface Source {
+        int size();
+        PersonRow get(int position);
+        // Swap in a changed row without moving any rows, false if that can't be done in place
+        boolean replace(PersonRow row);
+        // Drop a deleted person, false if that can't be done in place
+        boolean remove(int personId);
+    }
+
+    // Source over a list that is already loaded, such as a search result for term and searchType
+    public static class ListSource implements Source {
+        private final List<PersonRow> rows;
+        private final String term;
+        private final int searchType;
+
+        public ListSource(List<PersonRow> rows, String term, int searchType) {
+            // a copy of its own: PersonSearch keeps the result it delivered to refine later searches from,
+            // possibly on its executor while replace and remove change this list on the main thread
+            this.rows = new ArrayList<>(rows);
+            this.term = term;
+            this.searchType = searchType;
+        }
+
+        @Override
+        public int size() {return rows.size();}
+
+        @Override
+        public PersonRow get(int position) {return rows.get(position);}
+
+        @Override
+        public boolean replace(PersonRow row) {
+            int position = indexOf(row.getId());
+            // a person that wasn't in the result may match now, like one created during the search
+            if (position == -1) {
+                return false;
+            }
+            PersonRow old = rows.get(position);
+            if (!sameSortKey(old, row) || !stillMatches(row)) {
+                return false;
+            }
+            rows.set(position, row);
+            return true;
+        }
+
+        @Override
+        public boolean remove(int personId) {
+            // a person that isn't listed leaves the result as it is
+            int position = indexOf(personId);
+            if (position != -1) {
+                rows.remove(position);
+            }
+            return true;
+        }
+
+        // The fields the search orders by, see NRSQLiteHelper.getSearchRows
+        private boolean sameSortKey(PersonRow old, PersonRow row) {
+            if (!sameText(old.getFirstName(), row.getFirstName()) || !sameText(old.getLastName(), row.getLastName())) {
+                return false;
+            }
+            if (searchType == 0) {
+                return old.getDate() == row.getDate();
+            } else if (searchType == 2) {
+                // exact keyword matches are ranked first
+                return Arrays.asList(old.getKeywords()).contains(term) == Arrays.asList(row.getKeywords()).contains(term);
+            }
+            return true;
+        }
+
+        private boolean stillMatches(PersonRow row) {
+            // terms SearchRefinement can't match in memory are left to a new search
+            if (!SearchRefinement.canRefine("", searchType, term, searchType)) {
+                return false;
+            }
+            return !SearchRefinement.refine(Collections.singletonList(row), term, searchType).isEmpty();
+        }
+
+        private int indexOf(int personId) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).getId() == personId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean sameText(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private static final int VIEW_TYPE_2_ROW = 0;
+    private static final int VIEW_TYPE_3_ROW = 1;
+
+    private final LayoutInflater inflater;
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, Locale.getDefault());
+    // reused for formatting so binding a row doesn't allocate a Date
+    private final Date rowDate = new Date();
+    private Source source;
+    // activeToggle whose field is shown under the name, -1 for none
+    private int otherField = -1;
+
+    public PersonListAdapter(Context context) {
+        this.inflater = LayoutInflater.from(context);
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public void setSource(Source source, int otherField) {
+        this.source = source;
+        this.otherField = otherField == 0 ? -1 : otherField;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return source == null ? 0 : source.size();
+    }
+
+    @Override
+    public PersonRow getItem(int position) {
+        return source.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 2;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return otherField == -1 ? VIEW_TYPE_2_ROW : VIEW_TYPE_3_ROW;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        RowViews row;
+        if (convertView == null) {
+            boolean threeRows = getItemViewType(position) == VIEW_TYPE_3_ROW;
+            convertView = inflater.inflate(threeRows ? R.layout.person_list_3_row_layout : R.layout.person_list_2_row_layout, parent, false);
+            row = new RowViews();
+            row.name = (TextView) convertView.findViewById(R.id.listText);
+            row.other = threeRows ? (TextView) convertView.findViewById(R.id.listText2) : null;
+            row.date = (TextView) convertView.findViewById(R.id.listText3);
+            convertView.setTag(row);
+        } else {
+            row = (RowViews) convertView.getTag();
+        }
+
+        PersonRow person = getItem(position);
+        row.name.setText(person.getFullName());
+        if (row.other != null) {
+            row.other.setText(person.getOtherText());
+        }
+        if (person.hasDate()) {
+            rowDate.setTime(person.getDate());
+            row.date.setText(dateFormat.format(rowDate));
+        } else {
+            row.date.setText("");
+        }
+        return convertView;
+    }
+
+    private static class RowViews {
+        TextView name;
+        TextView other;
+        TextView date;
+    }
+}
@@ -0,0 +1,73 @@
+package com.thomaspreece.nameremember;
+
+// Just what a row of the person list shows: the name, the meeting date and the one field picked
+// by the search toggle. Full Persons are only read when one is opened.
+public class PersonRow {
+    // no field is shown under the name
+    public static final int NO_OTHER = -1;
+    // id of the first placeholder row, each position counts down from it so ids stay distinct
+    public static final int NO_PERSON = -1;
+    // date column was NULL
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private final int id;
+    private final String firstName;
+    private final String lastName;
+    private final long date;
+    // description for toggles 1 and 3, interests for toggle 4
+    private final String other;
+    // only loaded for toggle 2, sorted
+    private String[] keywords;
+
+    public PersonRow(int id, String firstName, String lastName, long date, String other) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.date = date;
+        this.other = other;
+    }
+
+    // An empty row for position while its person loads or after it is gone
+    public static PersonRow placeholder(int position) {
+        return new PersonRow(NO_PERSON - position, "", "", NO_DATE, null);
+    }
+
+    public boolean isPlaceholder() {return this.id <= NO_PERSON;}
+
+    // The row a full person shows for searchType, NO_OTHER for the plain list
+    public static PersonRow from(Person person, int searchType) {
+        String other = null;
+        if (searchType == 1 || searchType == 3) {
+            other = person.getDescription();
+        } else if (searchType == 4) {
+            other = person.getInterests();
+        }
+        PersonRow row = new PersonRow(person.getId(), person.getFirstName(), person.getLastName(),
+                person.getDate() == null ? NO_DATE : person.getDate().getTime(), other);
+        if (searchType == 2) {
+            row.setKeywords(person.getKeywords().toArray(new String[person.getKeywords().size()]));
+        }
+        return row;
+    }
+
+    public int getId() {return this.id;}
+    public String getFirstName() {return this.firstName;}
+    public String getLastName() {return this.lastName;}
+    public String getFullName() {return this.firstName + " " + this.lastName;}
+
+    public long getDate() {return this.date;}
+    public boolean hasDate() {return this.date != NO_DATE;}
+
+    public String getOther() {return this.other;}
+
+    public String[] getKeywords() {return this.keywords == null ? new String[0] : this.keywords;}
+    void setKeywords(String[] keywords) {this.keywords = keywords;}
+
+    // Text for the line under the name
+    public String getOtherText() {
+        if (this.keywords != null) {
+            return android.text.TextUtils.join(" , ", this.keywords);
+        }
+        return this.other;
+    }
+}
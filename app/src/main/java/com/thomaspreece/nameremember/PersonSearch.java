@@ -0,0 +1,129 @@
+package com.thomaspreece.nameremember;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs person searches on a background thread. Keystrokes are debounced, a newer search cancels
+// the one still running and only the result of the newest search is delivered, on the main thread.
+// When a term only extends the last delivered one the last result is filtered instead of querying.
+public class PersonSearch {
+
+    public interface Listener {
+        void onSearchResult(String term, int searchType, List<PersonRow> rows);
+    }
+
+    // how long typing has to pause before a search is started
+    private static final long DEBOUNCE_MS = 150;
+
+    private final NRSQLiteHelper db;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // main thread only
+    private int generation;
+    private Runnable pendingSearch;
+    private CancellationSignal runningSignal;
+    private String lastTerm;
+    private int lastSearchType;
+    private List<PersonRow> lastResult;
+
+    public PersonSearch(NRSQLiteHelper db, Listener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    // Search after the debounce delay, for as-you-type queries
+    public void search(String term, int searchType) {
+        schedule(term, searchType, DEBOUNCE_MS);
+    }
+
+    // Search straight away, for toggle changes and opening the search
+    public void searchNow(String term, int searchType) {
+        schedule(term, searchType, 0);
+    }
+
+    // Drop any pending or running search without delivering its result
+    public void cancel() {
+        generation++;
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        if (runningSignal != null) {
+            runningSignal.cancel();
+            runningSignal = null;
+        }
+    }
+
+    // Forget the last result so the next search goes to the database, call after persons change
+    public void invalidate() {
+        cancel();
+        lastResult = null;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void schedule(final String term, final int searchType, long delay) {
+        cancel();
+        final int searchGeneration = generation;
+        pendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                pendingSearch = null;
+                runningSignal = new CancellationSignal();
+                List<PersonRow> refineFrom = null;
+                if (lastResult != null && SearchRefinement.canRefine(lastTerm, lastSearchType, term, searchType)) {
+                    refineFrom = lastResult;
+                }
+                execute(term, searchType, searchGeneration, runningSignal, refineFrom);
+            }
+        };
+        if (delay > 0) {
+            mainHandler.postDelayed(pendingSearch, delay);
+        } else {
+            pendingSearch.run();
+        }
+    }
+
+    private void execute(final String term, final int searchType, final int searchGeneration, final CancellationSignal signal, final List<PersonRow> refineFrom) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<PersonRow> rows;
+                try {
+                    if (refineFrom != null) {
+                        rows = SearchRefinement.refine(refineFrom, term, searchType);
+                    } else {
+                        rows = db.getSearchRows(term, searchType, signal);
+                    }
+                } catch (OperationCanceledException e) {
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // a newer search or a cancel happened while this one ran
+                        if (searchGeneration != generation) {
+                            return;
+                        }
+                        runningSignal = null;
+                        lastTerm = term;
+                        lastSearchType = searchType;
+                        lastResult = rows;
+                        listener.onSearchResult(term, searchType, rows);
+                    }
+                });
+            }
+        });
+    }
+}
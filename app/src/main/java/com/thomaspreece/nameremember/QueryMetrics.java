@@ -0,0 +1,207 @@
+package com.thomaspreece.nameremember;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Timings for NRSQLiteHelper operations: call count, total and worst time and rows for each operation,
+// a latency histogram for each search type, and the most recent operations slower than SLOW_QUERY_MS
+// together with the EXPLAIN QUERY PLAN of their main query. In debug builds shown by QueryMetricsActivity and dumped by
+//   adb shell dumpsys activity com.thomaspreece.nameremember/.MainActivity
+public class QueryMetrics {
+
+    // operations taking at least this long go in the slow log with their query plan
+    public static final long SLOW_QUERY_MS = 100;
+    private static final int SLOW_LOG_SIZE = 20;
+    // upper bounds in ms of the histogram buckets, the last bucket takes everything slower
+    private static final long[] BUCKET_MS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+    // Recent, Name, Keywords, Description and Interests
+    private static final int SEARCH_TYPES = 5;
+
+    // One operation being timed. The operation names the main query it runs with query(),
+    // so its plan can be captured if it turns out to be slow.
+    public static class Trace {
+        private final String operation;
+        private final int searchType;
+        private final long start = System.nanoTime();
+        private String sql;
+        private String[] args;
+
+        private Trace(String operation, int searchType) {
+            this.operation = operation;
+            this.searchType = searchType;
+        }
+
+        public void query(String sql, String[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    private static class Stats {
+        long count;
+        long totalNanos;
+        long maxNanos;
+        long rows;
+    }
+
+    private static class SlowQuery {
+        long time;
+        String operation;
+        int searchType;
+        long nanos;
+        int rows;
+        String sql;
+        String[] args;
+        String plan;
+    }
+
+    private final Map<String, Stats> operations = new TreeMap<>();
+    private final long[][] searchHistograms = new long[SEARCH_TYPES][BUCKET_MS.length + 1];
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private long since = System.currentTimeMillis();
+
+    public Trace begin(String operation) {
+        return new Trace(operation, -1);
+    }
+
+    public Trace begin(String operation, int searchType) {
+        return new Trace(operation, searchType);
+    }
+
+    // Record a finished operation. Not called for operations that were cancelled or threw, their time
+    // says nothing about the query. db is used to explain the query of a slow operation.
+    public void end(SQLiteDatabase db, Trace trace, int rows) {
+        long nanos = System.nanoTime() - trace.start;
+        // explained outside the lock, it is a query of its own
+        String plan = null;
+        boolean slow = nanos >= SLOW_QUERY_MS * 1000000;
+        if (slow && trace.sql != null) {
+            plan = explain(db, trace.sql, trace.args);
+        }
+
+        synchronized (this) {
+            Stats stats = operations.get(trace.operation);
+            if (stats == null) {
+                stats = new Stats();
+                operations.put(trace.operation, stats);
+            }
+            stats.count++;
+            stats.totalNanos += nanos;
+            stats.maxNanos = Math.max(stats.maxNanos, nanos);
+            stats.rows += rows;
+
+            if (trace.searchType >= 0 && trace.searchType < SEARCH_TYPES) {
+                searchHistograms[trace.searchType][bucket(nanos / 1000000)]++;
+            }
+
+            if (slow) {
+                SlowQuery query = new SlowQuery();
+                query.time = System.currentTimeMillis();
+                query.operation = trace.operation;
+                query.searchType = trace.searchType;
+                query.nanos = nanos;
+                query.rows = rows;
+                query.sql = trace.sql;
+                // search terms are personal, only debug builds keep them
+                query.args = BuildConfig.DEBUG ? trace.args : null;
+                query.plan = plan;
+                if (slowQueries.size() == SLOW_LOG_SIZE) {
+                    slowQueries.removeFirst();
+                }
+                slowQueries.addLast(query);
+            }
+        }
+    }
+
+    public synchronized void reset() {
+        operations.clear();
+        for (long[] histogram : searchHistograms) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = 0;
+            }
+        }
+        slowQueries.clear();
+        since = System.currentTimeMillis();
+    }
+
+    // Plain text snapshot of everything recorded since the last reset
+    public synchronized void dump(PrintWriter writer) {
+        SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
+        writer.println("Query metrics since " + timeFormat.format(new Date(since)));
+
+        writer.println();
+        writer.println("Operations (count, total ms, mean ms, max ms, rows):");
+        for (Map.Entry<String, Stats> entry : operations.entrySet()) {
+            Stats stats = entry.getValue();
+            writer.println(String.format(Locale.UK, "  %-24s %6d %9.1f %8.2f %8.1f %8d", entry.getKey(), stats.count,
+                    stats.totalNanos / 1e6, stats.totalNanos / 1e6 / stats.count, stats.maxNanos / 1e6, stats.rows));
+        }
+
+        writer.println();
+        writer.println("Search latency by type (ms bucket: count):");
+        for (int type = 0; type < SEARCH_TYPES; type++) {
+            StringBuilder line = new StringBuilder("  type " + type + ":");
+            for (int i = 0; i < searchHistograms[type].length; i++) {
+                if (searchHistograms[type][i] > 0) {
+                    line.append(i < BUCKET_MS.length ? " <" + BUCKET_MS[i] : " >=" + BUCKET_MS[BUCKET_MS.length - 1]);
+                    line.append(": ").append(searchHistograms[type][i]);
+                }
+            }
+            writer.println(line);
+        }
+
+        writer.println();
+        writer.println("Slow operations (>= " + SLOW_QUERY_MS + " ms), oldest first:");
+        for (SlowQuery query : slowQueries) {
+            writer.println(String.format(Locale.UK, "  %s %s%s %.1f ms, %d rows", timeFormat.format(new Date(query.time)), query.operation,
+                    query.searchType >= 0 ? " type " + query.searchType : "", query.nanos / 1e6, query.rows));
+            if (query.sql != null) {
+                writer.println("    " + query.sql);
+                if (query.args != null) {
+                    writer.println("    args " + Arrays.toString(query.args));
+                }
+            }
+            if (query.plan != null) {
+                writer.print(query.plan);
+            }
+        }
+        writer.flush();
+    }
+
+    private static int bucket(long ms) {
+        for (int i = 0; i < BUCKET_MS.length; i++) {
+            if (ms < BUCKET_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_MS.length;
+    }
+
+    // The plan's detail lines, or why there is no plan
+    private static String explain(SQLiteDatabase db, String sql, String[] args) {
+        StringBuilder plan = new StringBuilder();
+        try {
+            Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    plan.append("      ").append(cursor.getString(detail)).append('\n');
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            plan.append("      plan unavailable: ").append(e.getMessage()).append('\n');
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.thomaspreece.nameremember;
+
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.text.method.ScrollingMovementMethod;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+// Debug build screen showing the data layer timings and slow query plans from QueryMetrics,
+// and the keystroke to results times from SearchLatency
+public class QueryMetricsActivity extends AppCompatActivity {
+    QueryMetrics metrics;
+    TextView metricsText;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // only reachable from the menu of debug builds, the slow log holds search terms
+        if (!BuildConfig.DEBUG) {
+            finish();
+            return;
+        }
+        setContentView(R.layout.activity_query_metrics);
+
+        Toolbar myToolbar = (Toolbar) findViewById(R.id.my_toolbar);
+        setSupportActionBar(myToolbar);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null){
+            actionBar.setHomeButtonEnabled(true);
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        metrics = NRSQLiteHelper.getInstance(this).getQueryMetrics();
+        metricsText = (TextView) findViewById(R.id.metrics);
+        metricsText.setMovementMethod(new ScrollingMovementMethod());
+
+        Button refreshButton = (Button) findViewById(R.id.refreshMetrics);
+        refreshButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showMetrics();
+            }
+        });
+        Button resetButton = (Button) findViewById(R.id.resetMetrics);
+        resetButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                metrics.reset();
+                SearchLatency.getInstance().reset();
+                showMetrics();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        metrics.dump(writer);
+        writer.println();
+        SearchLatency.getInstance().dump(writer);
+        metricsText.setText(text.toString());
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            this.onBackPressed();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,234 @@
+package com.thomaspreece.nameremember;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// What searching feels like from the search box: the time from the keystroke or toggle that asked for a
+// search until the list is about to draw its results, so the debounce, query, adapter rebuild and layout
+// all count. Kept as p50/p95/p99 for each search type and result count, with the frames the main thread
+// missed while typing. Shown next to QueryMetrics on the Query Stats screen and in MainActivity.dump.
+public class SearchLatency {
+
+    private static final String TAG = "SearchLatency";
+    // slowest acceptable keystroke to results time, including the PersonSearch debounce
+    public static final long BUDGET_MS = 250;
+    // Recent, Name, Keywords, Description and Interests
+    private static final int SEARCH_TYPES = 5;
+    // largest result count in each bucket, the last bucket takes everything bigger
+    private static final int[] RESULT_BUCKETS = {0, 10, 100, 1000};
+    // frames stop being watched this long after the last keystroke or result
+    private static final long TYPING_IDLE_MS = 1000;
+    // upper bounds in ms of the histogram buckets, each about 10% above the last
+    private static final long[] BUCKET_MS;
+
+    static {
+        List<Long> bounds = new ArrayList<>();
+        for (long bound = 1; bound < 60000; bound = Math.max(bound + 1, Math.round(bound * 1.1))) {
+            bounds.add(bound);
+        }
+        BUCKET_MS = new long[bounds.size()];
+        for (int i = 0; i < BUCKET_MS.length; i++) {
+            BUCKET_MS[i] = bounds.get(i);
+        }
+    }
+
+    private static SearchLatency instance;
+
+    // one histogram per search type and result bucket
+    private final long[][][] histograms = new long[SEARCH_TYPES][RESULT_BUCKETS.length + 1][BUCKET_MS.length + 1];
+    private final long[][] maxMs = new long[SEARCH_TYPES][RESULT_BUCKETS.length + 1];
+    private final long[][] overBudget = new long[SEARCH_TYPES][RESULT_BUCKETS.length + 1];
+    private long typingFrames;
+    private long droppedFrames;
+
+    // main thread only
+    private long inputTime = -1;
+    private long typingUntil;
+    private long frameIntervalNanos = 1000000000L / 60;
+    private long lastFrameNanos;
+    private boolean watchingFrames;
+    private View pendingView;
+    private ViewTreeObserver.OnPreDrawListener pendingDraw;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (lastFrameNanos != 0) {
+                // vsyncs that passed without a frame, rounded as frame times jitter
+                long missed = (frameTimeNanos - lastFrameNanos + frameIntervalNanos / 2) / frameIntervalNanos - 1;
+                synchronized (SearchLatency.this) {
+                    typingFrames++;
+                    droppedFrames += Math.max(0, missed);
+                }
+            }
+            lastFrameNanos = frameTimeNanos;
+            if (SystemClock.uptimeMillis() < typingUntil) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                watchingFrames = false;
+                lastFrameNanos = 0;
+            }
+        }
+    };
+
+    public static synchronized SearchLatency getInstance() {
+        if (instance == null) {
+            instance = new SearchLatency();
+        }
+        return instance;
+    }
+
+    private SearchLatency() {}
+
+    // The display's refresh rate, for counting missed frames
+    public void setRefreshRate(float framesPerSecond) {
+        if (framesPerSecond > 0) {
+            frameIntervalNanos = (long) (1000000000L / framesPerSecond);
+        }
+    }
+
+    // A keystroke or toggle asked for a search, main thread only. A later input replaces an earlier
+    // one still waiting, the results that get drawn are those of the latest.
+    public void inputReceived() {
+        inputTime = SystemClock.uptimeMillis();
+        watchFrames();
+    }
+
+    // Results for the latest input were handed to list, record the time once it is laid out with them.
+    // Results nobody typed for, like a reload after an import, are not timed.
+    public void resultsShown(View list, final int searchType, final int resultCount) {
+        if (inputTime < 0) {
+            return;
+        }
+        final long start = inputTime;
+        inputTime = -1;
+        cancel();
+        watchFrames();
+
+        pendingView = list;
+        pendingDraw = new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                cancel();
+                record(searchType, resultCount, SystemClock.uptimeMillis() - start);
+                return true;
+            }
+        };
+        list.getViewTreeObserver().addOnPreDrawListener(pendingDraw);
+    }
+
+    // Stop waiting for a draw, for when the list goes off screen
+    public void cancel() {
+        if (pendingDraw != null) {
+            pendingView.getViewTreeObserver().removeOnPreDrawListener(pendingDraw);
+            pendingDraw = null;
+            pendingView = null;
+        }
+    }
+
+    public synchronized void reset() {
+        for (int type = 0; type < SEARCH_TYPES; type++) {
+            for (int bucket = 0; bucket <= RESULT_BUCKETS.length; bucket++) {
+                histograms[type][bucket] = new long[BUCKET_MS.length + 1];
+                maxMs[type][bucket] = 0;
+                overBudget[type][bucket] = 0;
+            }
+        }
+        typingFrames = 0;
+        droppedFrames = 0;
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Keystroke to results (ms) by search type and result count, budget " + BUDGET_MS + " ms:");
+        for (int type = 0; type < SEARCH_TYPES; type++) {
+            for (int bucket = 0; bucket <= RESULT_BUCKETS.length; bucket++) {
+                long[] histogram = histograms[type][bucket];
+                long count = 0;
+                for (long n : histogram) {
+                    count += n;
+                }
+                if (count == 0) {
+                    continue;
+                }
+                writer.println(String.format(Locale.UK, "  type %d, %-11s n=%-5d p50 %-5d p95 %-5d p99 %-5d max %-5d over budget %d",
+                        type, resultBucketName(bucket), count, percentile(histogram, count, 0.50, maxMs[type][bucket]),
+                        percentile(histogram, count, 0.95, maxMs[type][bucket]), percentile(histogram, count, 0.99, maxMs[type][bucket]),
+                        maxMs[type][bucket], overBudget[type][bucket]));
+            }
+        }
+        writer.println(String.format(Locale.UK, "Frames while typing: %d, dropped %d (%.1f%%)", typingFrames, droppedFrames,
+                typingFrames == 0 ? 0.0 : droppedFrames * 100.0 / (typingFrames + droppedFrames)));
+        writer.flush();
+    }
+
+    private synchronized void record(int searchType, int resultCount, long ms) {
+        if (searchType < 0 || searchType >= SEARCH_TYPES) {
+            throw new RuntimeException("Invalid Toggle State: " + searchType);
+        }
+        int resultBucket = resultBucket(resultCount);
+        histograms[searchType][resultBucket][latencyBucket(ms)]++;
+        maxMs[searchType][resultBucket] = Math.max(maxMs[searchType][resultBucket], ms);
+        if (ms > BUDGET_MS) {
+            overBudget[searchType][resultBucket]++;
+            Log.w(TAG, "Search type " + searchType + " with " + resultCount + " results took " + ms + " ms, budget " + BUDGET_MS + " ms");
+        }
+    }
+
+    // Keep counting frames until typing has been idle for a while
+    private void watchFrames() {
+        typingUntil = SystemClock.uptimeMillis() + TYPING_IDLE_MS;
+        if (!watchingFrames) {
+            watchingFrames = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    private static int resultBucket(int resultCount) {
+        for (int i = 0; i < RESULT_BUCKETS.length; i++) {
+            if (resultCount <= RESULT_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return RESULT_BUCKETS.length;
+    }
+
+    private static String resultBucketName(int bucket) {
+        if (bucket == 0) {
+            return "0 results";
+        } else if (bucket < RESULT_BUCKETS.length) {
+            return "<=" + RESULT_BUCKETS[bucket] + " results";
+        }
+        return ">" + RESULT_BUCKETS[RESULT_BUCKETS.length - 1] + " results";
+    }
+
+    private static int latencyBucket(long ms) {
+        for (int i = 0; i < BUCKET_MS.length; i++) {
+            if (ms < BUCKET_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_MS.length;
+    }
+
+    // Upper bound of the bucket holding the given fraction of samples, so within about 10% of the true
+    // value, but never more than the slowest sample
+    private static long percentile(long[] histogram, long count, double fraction, long max) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_MS.length; i++) {
+            seen += histogram[i];
+            if (seen >= target) {
+                return Math.min(BUCKET_MS[i], max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,194 @@
+package com.thomaspreece.nameremember;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Narrows an earlier search result in memory when the new term only extends the old one, applying
+// the same matching and ordering rules as NRSQLiteHelper.getSearchRows so no query is needed.
+public class SearchRefinement {
+
+    private SearchRefinement() {}
+
+    // True when every result for newTerm is guaranteed to be in the result for previousTerm
+    public static boolean canRefine(String previousTerm, int previousType, String newTerm, int newType) {
+        if (previousType != newType || newTerm == null) {
+            return false;
+        }
+        String previous = previousTerm == null ? "" : previousTerm;
+        boolean textSearch = newType == 1 || newType == 3 || newType == 4;
+        boolean newMatch = textSearch && NRSQLiteHelper.buildMatchQuery(newTerm) != null;
+        boolean newRange = newType == 0 && DateRange.parse(newTerm) != null;
+        if (!newMatch && !newRange && (newTerm.indexOf('%') != -1 || newTerm.indexOf('_') != -1)) {
+            // LIKE wildcards in the term are not handled in memory
+            return false;
+        }
+        if (previous.trim().length() == 0) {
+            // an empty term lists everybody so any term narrows it
+            return true;
+        }
+        if (!newTerm.toLowerCase().startsWith(previous.toLowerCase())) {
+            return false;
+        }
+        if (newType == 0) {
+            // date ranges don't narrow by extending the text, only the LIKE fallback does
+            return DateRange.parse(previous) == null && DateRange.parse(newTerm) == null;
+        }
+        // both terms must use the same kind of query, MATCH or the LIKE fallback
+        return !textSearch || (NRSQLiteHelper.buildMatchQuery(previous) != null) == newMatch;
+    }
+
+    public static List<PersonRow> refine(List<PersonRow> previous, String term, int searchType) {
+        final String trimmedTerm = term.trim();
+        if (trimmedTerm.length() == 0) {
+            return new ArrayList<>(previous);
+        }
+        String lowerTerm = term.toLowerCase();
+        List<String> tokens = NRSQLiteHelper.searchTokens(term);
+        SimpleDateFormat dateFormat = searchType == 0 ? new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK) : null;
+        String nameKey = searchType == 1 ? NameKeys.normalize(term) : null;
+        DateRange range = searchType == 0 ? DateRange.parse(term) : null;
+
+        List<PersonRow> persons = new ArrayList<>();
+        for (PersonRow person : previous) {
+            boolean matches;
+            switch (searchType) {
+                case 0:
+                    if (!person.hasDate()) {
+                        matches = false;
+                    } else if (range != null) {
+                        matches = range.contains(person.getDate());
+                    } else {
+                        matches = dateFormat.format(new Date(person.getDate())).toLowerCase().contains(lowerTerm);
+                    }
+                    break;
+                case 1:
+                    // key prefix or FTS word prefixes, there is no LIKE fallback for names
+                    matches = NameKeys.firstLast(person.getFirstName(), person.getLastName()).startsWith(nameKey)
+                            || NameKeys.lastFirst(person.getFirstName(), person.getLastName()).startsWith(nameKey)
+                            || (!tokens.isEmpty() && textMatches(person.getFirstName() + " " + person.getLastName(), lowerTerm, tokens));
+                    break;
+                case 2:
+                    matches = false;
+                    for (String keyword : person.getKeywords()) {
+                        if (keyword.toLowerCase().contains(lowerTerm)) {
+                            matches = true;
+                            break;
+                        }
+                    }
+                    break;
+                case 3:
+                case 4:
+                    matches = textMatches(person.getOther(), lowerTerm, tokens);
+                    break;
+                default:
+                    throw new RuntimeException("Invalid Toggle State: " + searchType);
+            }
+            if (matches) {
+                persons.add(person);
+            }
+        }
+
+        // exact matches are ranked first, which depends on the term so re-sort
+        if (searchType == 1) {
+            persons = sortByNameKey(persons, nameKey);
+        } else if (searchType == 2) {
+            final String keywordTerm = term;
+            Collections.sort(persons, new Comparator<PersonRow>() {
+                @Override
+                public int compare(PersonRow a, PersonRow b) {
+                    int exact = rank(hasKeyword(b, keywordTerm)) - rank(hasKeyword(a, keywordTerm));
+                    if (exact != 0) {
+                        return exact;
+                    }
+                    int last = compareNoCase(a.getLastName(), b.getLastName());
+                    return last != 0 ? last : compareNoCase(a.getFirstName(), b.getFirstName());
+                }
+            });
+        }
+        return persons;
+    }
+
+    // MATCH semantics when the term has tokens, otherwise the LIKE '%term%' fallback
+    private static boolean textMatches(String text, String lowerTerm, List<String> tokens) {
+        if (text == null) {
+            return false;
+        }
+        if (tokens.isEmpty()) {
+            return text.toLowerCase().contains(lowerTerm);
+        }
+        List<String> textTokens = NRSQLiteHelper.searchTokens(text);
+        for (String token : tokens) {
+            boolean found = false;
+            for (String textToken : textTokens) {
+                if (textToken.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The name search order: the exact name first, then by "first last" key and id. Each key is
+    // computed once rather than in every comparison.
+    private static List<PersonRow> sortByNameKey(List<PersonRow> persons, final String nameKey) {
+        final String[] keys = new String[persons.size()];
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = NameKeys.firstLast(persons.get(i).getFirstName(), persons.get(i).getLastName());
+            order[i] = i;
+        }
+        final List<PersonRow> unsorted = persons;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int exact = rank(keys[b].equals(nameKey)) - rank(keys[a].equals(nameKey));
+                if (exact != 0) {
+                    return exact;
+                }
+                int key = keys[a].compareTo(keys[b]);
+                if (key != 0) {
+                    return key;
+                }
+                int idA = unsorted.get(a).getId();
+                int idB = unsorted.get(b).getId();
+                return idA < idB ? -1 : (idA == idB ? 0 : 1);
+            }
+        });
+        List<PersonRow> sorted = new ArrayList<>(keys.length);
+        for (Integer i : order) {
+            sorted.add(unsorted.get(i));
+        }
+        return sorted;
+    }
+
+    private static boolean hasKeyword(PersonRow person, String keyword) {
+        for (String k : person.getKeywords()) {
+            if (k.equals(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int rank(boolean exact) {
+        return exact ? 1 : 0;
+    }
+
+    // COLLATE NOCASE ordering, nulls first like SQLite
+    private static int compareNoCase(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareToIgnoreCase(b);
+    }
+}
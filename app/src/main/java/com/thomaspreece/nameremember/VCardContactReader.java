@@ -0,0 +1,190 @@
+package com.thomaspreece.nameremember;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Persons from a vCard file (versions 2.1, 3.0 and 4.0), one card at a time. N or FN gives the name,
+// NOTE the description and CATEGORIES the keywords. Folded lines and the quoted-printable values
+// written by phone contact exports are decoded.
+public class VCardContactReader implements ContactReader {
+
+    private final BufferedReader in;
+    // line read ahead while unfolding
+    private String nextLine;
+
+    public VCardContactReader(BufferedReader in) throws IOException {
+        this.in = in;
+        this.nextLine = in.readLine();
+        if (nextLine != null && nextLine.startsWith("\uFEFF")) {
+            nextLine = nextLine.substring(1);
+        }
+    }
+
+    @Override
+    public Person read() throws IOException {
+        Person person = null;
+        String fullName = null;
+        String line;
+        while ((line = readLine()) != null) {
+            int colon = line.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String[] parameters = line.substring(0, colon).split(";");
+            // drop any group prefix such as item1.
+            String property = parameters[0].substring(parameters[0].lastIndexOf('.') + 1).toUpperCase(Locale.UK);
+            String value = line.substring(colon + 1);
+
+            if (property.equals("BEGIN") && value.trim().equalsIgnoreCase("VCARD")) {
+                person = new Person();
+                fullName = null;
+                continue;
+            }
+            if (person == null) {
+                continue;
+            }
+            if (property.equals("END") && value.trim().equalsIgnoreCase("VCARD")) {
+                if (isEmpty(person.getFirstName()) && isEmpty(person.getLastName()) && fullName != null) {
+                    int split = fullName.lastIndexOf(' ');
+                    person.setFirstName(split == -1 ? fullName : fullName.substring(0, split).trim());
+                    person.setLastName(split == -1 ? "" : fullName.substring(split + 1));
+                }
+                return person;
+            }
+
+            value = decode(parameters, value);
+            switch (property) {
+                case "N":
+                    // family;given;additional;prefix;suffix
+                    List<String> names = split(value, ';');
+                    person.setLastName(names.size() > 0 ? names.get(0).trim() : "");
+                    person.setFirstName(names.size() > 1 ? names.get(1).trim() : "");
+                    break;
+                case "FN":
+                    fullName = unescape(value).trim();
+                    break;
+                case "NOTE":
+                    person.setDescription(unescape(value));
+                    break;
+                case "CATEGORIES":
+                    for (String keyword : split(value, ',')) {
+                        if (keyword.trim().length() != 0) {
+                            person.addKeyword(keyword.trim());
+                        }
+                    }
+                    break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // One logical line, joining the continuation lines of folded values
+    private String readLine() throws IOException {
+        String line = nextLine;
+        if (line == null) {
+            return null;
+        }
+        nextLine = in.readLine();
+        boolean quotedPrintable = line.toUpperCase(Locale.UK).contains("QUOTED-PRINTABLE");
+        StringBuilder unfolded = null;
+        while (nextLine != null) {
+            boolean folded = nextLine.startsWith(" ") || nextLine.startsWith("\t");
+            // quoted-printable uses a trailing = as a soft line break instead
+            boolean softBreak = quotedPrintable && (unfolded != null ? unfolded.toString() : line).endsWith("=");
+            if (!folded && !softBreak) {
+                break;
+            }
+            if (unfolded == null) {
+                unfolded = new StringBuilder(line);
+            }
+            if (softBreak) {
+                unfolded.setLength(unfolded.length() - 1);
+                unfolded.append(nextLine);
+            } else {
+                unfolded.append(nextLine, 1, nextLine.length());
+            }
+            nextLine = in.readLine();
+        }
+        return unfolded == null ? line : unfolded.toString();
+    }
+
+    // Undo ENCODING=QUOTED-PRINTABLE using the CHARSET parameter, other values are already text
+    private static String decode(String[] parameters, String value) throws UnsupportedEncodingException {
+        boolean quotedPrintable = false;
+        String charset = "UTF-8";
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].toUpperCase(Locale.UK);
+            if (parameter.equals("ENCODING=QUOTED-PRINTABLE") || parameter.equals("QUOTED-PRINTABLE")) {
+                quotedPrintable = true;
+            } else if (parameter.startsWith("CHARSET=")) {
+                charset = parameters[i].substring("CHARSET=".length());
+            }
+        }
+        if (!quotedPrintable) {
+            return value;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '=' && i + 2 < value.length() && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                bytes.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                bytes.write(c);
+            }
+        }
+        return bytes.toString(charset);
+    }
+
+    private static boolean isHex(char c) {
+        return Character.digit(c, 16) != -1;
+    }
+
+    // Split on separator where it isn't backslash escaped, unescaping each part
+    private static List<String> split(String value, char separator) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == separator) {
+                parts.add(unescape(value.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        parts.add(unescape(value.substring(start)));
+        return parts;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+        StringBuilder text = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                text.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    private static boolean isEmpty(String text) {
+        return text == null || text.length() == 0;
+    }
+}
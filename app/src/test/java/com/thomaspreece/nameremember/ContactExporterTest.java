@@ -0,0 +1,47 @@
+package com.thomaspreece.nameremember;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContactExporterTest {
+
+    @Test
+    public void csvExportReadsBackWhole() throws Exception {
+        long date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK).parse("2020-02-29 23:59:58").getTime();
+        StringWriter csv = new StringWriter();
+        ContactExporter.CsvRowWriter rows = new ContactExporter.CsvRowWriter(csv);
+        rows.write(1, "Ann", "Smith, Jr", "Said \"hi\"\r\nat the bus stop", "tea; chess", date,
+                Arrays.asList("book club", "a,b", "c;d", "e:::f", "g\\h"));
+        rows.write(2, "Bob", null, null, null, null, Collections.<String>emptyList());
+        rows.finish();
+
+        CsvContactReader reader = new CsvContactReader(new BufferedReader(new StringReader(csv.toString())));
+        Person ann = reader.read();
+        assertEquals("Ann", ann.getFirstName());
+        assertEquals("Smith, Jr", ann.getLastName());
+        assertEquals("Said \"hi\"\r\nat the bus stop", ann.getDescription());
+        assertEquals("tea; chess", ann.getInterests());
+        assertEquals(date, ann.getDate().getTime());
+        // read back sorted like any person's keywords
+        assertEquals(Arrays.asList("a,b", "book club", "c;d", "e:::f", "g\\h"), ann.getKeywords());
+
+        Person bob = reader.read();
+        assertEquals("Bob", bob.getFirstName());
+        assertEquals("", bob.getLastName());
+        assertEquals("", bob.getDescription());
+        assertNull(bob.getDate());
+        assertEquals(Collections.<String>emptyList(), bob.getKeywords());
+        assertNull(reader.read());
+    }
+}
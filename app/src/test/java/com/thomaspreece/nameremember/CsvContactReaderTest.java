@@ -0,0 +1,90 @@
+package com.thomaspreece.nameremember;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CsvContactReaderTest {
+
+    private static CsvContactReader reader(String csv) throws IOException {
+        return new CsvContactReader(new BufferedReader(new StringReader(csv)));
+    }
+
+    @Test
+    public void readsQuotedFieldsWithDelimitersQuotesAndLineBreaks() throws IOException {
+        CsvContactReader reader = reader("First Name,Last Name,Notes\r\n"
+                + "Ann,\"Smith, Jr\",\"Said \"\"hi\"\"\r\nat the bus stop\"\r\n"
+                + "Bob,Jones,\n");
+        Person ann = reader.read();
+        assertEquals("Ann", ann.getFirstName());
+        assertEquals("Smith, Jr", ann.getLastName());
+        assertEquals("Said \"hi\"\r\nat the bus stop", ann.getDescription());
+        Person bob = reader.read();
+        assertEquals("Jones", bob.getLastName());
+        assertEquals("", bob.getDescription());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void picksTheDelimiterFromTheHeader() throws IOException {
+        Person semicolons = reader("Given Name;Surname;Tags\nJ\u00fcrgen;Klein;a,b\n").read();
+        assertEquals("J\u00fcrgen", semicolons.getFirstName());
+        assertEquals("Klein", semicolons.getLastName());
+        assertEquals(Arrays.asList("a", "b"), semicolons.getKeywords());
+
+        Person tabs = reader("first\tlast\tnote\nCara\tDunn\tlikes, commas; too\n").read();
+        assertEquals("Dunn", tabs.getLastName());
+        assertEquals("likes, commas; too", tabs.getDescription());
+    }
+
+    @Test
+    public void skipsAByteOrderMarkAndBlankRecords() throws IOException {
+        CsvContactReader reader = reader("\uFEFFfirstname,lastname\n\n , \nDee,Evans\n");
+        Person dee = reader.read();
+        assertEquals("Dee", dee.getFirstName());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void splitsAFullNameOnItsLastWord() throws IOException {
+        CsvContactReader reader = reader("Name\nMary Ann Lee\nPrince\n");
+        Person mary = reader.read();
+        assertEquals("Mary Ann", mary.getFirstName());
+        assertEquals("Lee", mary.getLastName());
+        Person prince = reader.read();
+        assertEquals("Prince", prince.getFirstName());
+        assertEquals("", prince.getLastName());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAHeaderWithoutAName() throws IOException {
+        reader("notes,tags\nx,y\n");
+    }
+
+    @Test
+    public void splitsKeywordsOnEverySeparatorAndKeepsEscapes() {
+        assertEquals(Arrays.asList("work", "gym", "book club", "a,b", "c\\d"),
+                CsvContactReader.splitKeywords("work; gym ::: book club,a\\,b, c\\\\d,, "));
+        assertEquals(Collections.emptyList(), CsvContactReader.splitKeywords(""));
+    }
+
+    @Test
+    public void readsDatesWithOrWithoutTheTime() throws Exception {
+        CsvContactReader reader = reader("first,date\nA,2019-03-04 05:06:07\nB,2019-03-04\nC,04/03/2019\nD,\n");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
+        assertEquals(format.parse("2019-03-04 05:06:07"), reader.read().getDate());
+        assertEquals(format.parse("2019-03-04 00:00:00"), reader.read().getDate());
+        // unreadable and missing dates are left for the import to fill in
+        assertNull(reader.read().getDate());
+        assertNull(reader.read().getDate());
+    }
+}
@@ -0,0 +1,129 @@
+package com.thomaspreece.nameremember;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DateRangeTest {
+
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+    private static final long HOUR_MS = 60L * 60 * 1000;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    // Tuesday 15 March 2016, 10:30 in London
+    private static Calendar now() {
+        return at(LONDON, 2016, Calendar.MARCH, 15, 10, 30);
+    }
+
+    private static Calendar at(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(zone, Locale.UK);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar;
+    }
+
+    private static long midnight(int year, int month, int day) {
+        return at(LONDON, year, month, day, 0, 0).getTimeInMillis();
+    }
+
+    @Test
+    public void relativeDays() {
+        DateRange today = DateRange.parse("Today", now());
+        assertEquals(midnight(2016, Calendar.MARCH, 15), today.from);
+        assertEquals(midnight(2016, Calendar.MARCH, 16), today.to);
+
+        DateRange yesterday = DateRange.parse("yesterday", now());
+        assertEquals(midnight(2016, Calendar.MARCH, 14), yesterday.from);
+        assertEquals(today.from, yesterday.to);
+
+        // today and the six days before it
+        DateRange lastWeekOfDays = DateRange.parse("last  7 days", now());
+        assertEquals(midnight(2016, Calendar.MARCH, 9), lastWeekOfDays.from);
+        assertEquals(today.to, lastWeekOfDays.to);
+    }
+
+    @Test
+    public void weeksStartOnTheCalendarsFirstDay() {
+        // a UK calendar starts the week on Monday
+        DateRange thisWeek = DateRange.parse("this week", now());
+        assertEquals(midnight(2016, Calendar.MARCH, 14), thisWeek.from);
+        assertEquals(midnight(2016, Calendar.MARCH, 21), thisWeek.to);
+
+        DateRange lastWeek = DateRange.parse("last week", now());
+        assertEquals(midnight(2016, Calendar.MARCH, 7), lastWeek.from);
+        assertEquals(thisWeek.from, lastWeek.to);
+    }
+
+    @Test
+    public void monthsAndYears() {
+        DateRange lastMonth = DateRange.parse("last month", now());
+        assertEquals(midnight(2016, Calendar.FEBRUARY, 1), lastMonth.from);
+        assertEquals(midnight(2016, Calendar.MARCH, 1), lastMonth.to);
+
+        DateRange lastYear = DateRange.parse("last year", now());
+        assertEquals(midnight(2015, Calendar.JANUARY, 1), lastYear.from);
+        assertEquals(midnight(2016, Calendar.JANUARY, 1), lastYear.to);
+    }
+
+    @Test
+    public void calendarTerms() {
+        DateRange year = DateRange.parse("2016", now());
+        assertEquals(midnight(2016, Calendar.JANUARY, 1), year.from);
+        assertEquals(midnight(2017, Calendar.JANUARY, 1), year.to);
+
+        // a leap year February
+        DateRange month = DateRange.parse("2016-2", now());
+        assertEquals(29 * DAY_MS, month.to - month.from);
+
+        // the clocks went forward that night
+        DateRange day = DateRange.parse("2016-03-27", now());
+        assertEquals(23 * HOUR_MS, day.to - day.from);
+    }
+
+    @Test
+    public void calendarTermsUseTheTimeZoneOfNow() {
+        Calendar newYork = at(TimeZone.getTimeZone("America/New_York"), 2016, Calendar.MARCH, 15, 10, 30);
+        DateRange day = DateRange.parse("2016-01-22", newYork);
+        Calendar start = at(TimeZone.getTimeZone("UTC"), 2016, Calendar.JANUARY, 22, 5, 0);
+        assertEquals(start.getTimeInMillis(), day.from);
+        assertEquals(start.getTimeInMillis() + DAY_MS, day.to);
+    }
+
+    @Test
+    public void spans() {
+        DateRange span = DateRange.parse("2016-01..2016-03", now());
+        assertEquals(midnight(2016, Calendar.JANUARY, 1), span.from);
+        assertEquals(midnight(2016, Calendar.APRIL, 1), span.to);
+
+        // ending before it starts
+        assertNull(DateRange.parse("2016-03..2016-01", now()));
+        assertNull(DateRange.parse("2016..", now()));
+    }
+
+    @Test
+    public void termsThatAreNotRanges() {
+        assertNull(DateRange.parse("", now()));
+        assertNull(DateRange.parse("   ", now()));
+        assertNull(DateRange.parse("john", now()));
+        assertNull(DateRange.parse("2016-13", now()));
+        assertNull(DateRange.parse("2016-02-30", now()));
+        assertNull(DateRange.parse("last few days", now()));
+        assertNull(DateRange.parse("last 12345 days", now()));
+    }
+
+    @Test
+    public void rangesAreHalfOpen() {
+        DateRange today = DateRange.parse("today", now());
+        assertTrue(today.contains(today.from));
+        assertTrue(today.contains(today.to - 1));
+        assertFalse(today.contains(today.to));
+        assertFalse(today.contains((java.util.Date) null));
+    }
+}
@@ -0,0 +1,72 @@
+package com.thomaspreece.nameremember;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeywordIndexTest {
+
+    private static KeywordIndex index() {
+        return new KeywordIndex(new String[]{"work", "Football", "friend", "family", "Fishing", "fiddle"},
+                new int[]{9, 3, 7, 7, 1, 3});
+    }
+
+    @Test
+    public void suggestsByPrefixIgnoringCaseMostUsedFirst() {
+        // friend and family tie at 7, Football and fiddle at 3, ties stay alphabetical
+        assertEquals(Arrays.asList("family", "friend", "fiddle", "Football", "Fishing"), index().suggest("F", 10));
+        assertEquals(Arrays.asList("fiddle", "Fishing"), index().suggest("fi", 10));
+        assertEquals(Collections.singletonList("Football"), index().suggest("FOOT", 10));
+    }
+
+    @Test
+    public void suggestKeepsTheBestWithinTheLimit() {
+        assertEquals(Arrays.asList("family", "friend"), index().suggest("f", 2));
+        assertEquals(Arrays.asList("work", "family", "friend"), index().suggest("", 3));
+    }
+
+    @Test
+    public void suggestsNothing() {
+        assertTrue(index().suggest("x", 10).isEmpty());
+        assertTrue(index().suggest("f", 0).isEmpty());
+        assertTrue(new KeywordIndex(new String[0], new int[0]).suggest("", 5).isEmpty());
+    }
+
+    @Test
+    public void adjustCountsAddsAndDrops() {
+        Map<String, Integer> deltas = new HashMap<>();
+        deltas.put("Fishing", 9);
+        deltas.put("work", -9);
+        deltas.put("fencing", 2);
+        deltas.put("friend", -1);
+        KeywordIndex adjusted = index().adjust(deltas);
+
+        assertEquals(6, adjusted.size());
+        assertEquals(Arrays.asList("Fishing", "family", "friend", "fiddle", "Football", "fencing"), adjusted.suggest("f", 10));
+        assertTrue(adjusted.suggest("w", 10).isEmpty());
+    }
+
+    @Test
+    public void adjustLeavesTheOriginalAlone() {
+        KeywordIndex index = index();
+        index.adjust(Collections.singletonMap("work", -9));
+        assertEquals(6, index.size());
+        assertEquals(Collections.singletonList("work"), index.suggest("w", 10));
+    }
+
+    @Test
+    public void adjustMatchesKeywordsExactly() {
+        // a keyword differing only in case is a keyword of its own
+        KeywordIndex adjusted = index().adjust(Collections.singletonMap("WORK", 2));
+        assertEquals(Arrays.asList("work", "WORK"), adjusted.suggest("wo", 10));
+
+        // removing a keyword that isn't indexed changes nothing
+        assertEquals(6, index().adjust(Collections.singletonMap("chess", -1)).size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.thomaspreece.nameremember;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NameKeysTest {
+
+    private static final String MAX = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    @Test
+    public void normalizeLowercasesAndRemovesAccents() {
+        assertEquals("jose muller", NameKeys.normalize("Jos\u00e9 M\u00fcller"));
+        // already decomposed, a base letter followed by its mark
+        assertEquals("jose", NameKeys.normalize("Jose\u0301"));
+        assertEquals("francois", NameKeys.normalize("FRAN\u00c7OIS"));
+    }
+
+    @Test
+    public void normalizeFoldsLettersWithoutADecomposition() {
+        assertEquals("strasse", NameKeys.normalize("Stra\u00dfe"));
+        assertEquals("aero", NameKeys.normalize("\u00c6r\u00f8"));
+        assertEquals("oeuvre", NameKeys.normalize("\u0153uvre"));
+        assertEquals("lodz", NameKeys.normalize("\u0141\u00f3d\u017a"));
+        assertEquals("dord", NameKeys.normalize("\u0111\u00f3r\u00f0"));
+        assertEquals("thor", NameKeys.normalize("\u00deor"));
+        assertEquals("istanbul", NameKeys.normalize("\u0131stanbul"));
+    }
+
+    @Test
+    public void normalizeCollapsesSpacesAndTakesNull() {
+        assertEquals("mary ann", NameKeys.normalize("  Mary \t  Ann\n"));
+        assertEquals("", NameKeys.normalize("   "));
+        assertEquals("", NameKeys.normalize(null));
+    }
+
+    @Test
+    public void keysJoinBothOrdersAndSkipMissingParts() {
+        assertEquals("ann smith", NameKeys.firstLast("Ann", "Smith"));
+        assertEquals("smith ann", NameKeys.lastFirst("Ann", "Smith"));
+        assertEquals("smith", NameKeys.firstLast(null, "Smith"));
+        assertEquals("ann", NameKeys.lastFirst("Ann", " "));
+    }
+
+    @Test
+    public void prefixEndIncrementsTheLastCodePoint() {
+        assertEquals("jp", NameKeys.prefixEnd("jo"));
+        assertEquals("a" + new String(Character.toChars(0x1f601)), NameKeys.prefixEnd("a" + new String(Character.toChars(0x1f600))));
+        // the surrogate range is skipped, no code point there
+        assertEquals("a\ue000", NameKeys.prefixEnd("a\ud7ff"));
+        assertEquals(new String(Character.toChars(0x10000)), NameKeys.prefixEnd("\uffff"));
+    }
+
+    @Test
+    public void prefixEndCarriesPastTheHighestCodePoint() {
+        assertEquals("b", NameKeys.prefixEnd("a" + MAX));
+        assertEquals("b", NameKeys.prefixEnd("a" + MAX + MAX));
+        assertTrue(("a" + MAX + "z").compareTo(NameKeys.prefixEnd("a" + MAX)) < 0);
+    }
+
+    @Test
+    public void prefixEndHasNoEndForEmptyOrHighestOnlyPrefixes() {
+        assertNull(NameKeys.prefixEnd(""));
+        assertNull(NameKeys.prefixEnd(MAX));
+        assertNull(NameKeys.prefixEnd(MAX + MAX));
+    }
+}
@@ -0,0 +1,78 @@
+package com.thomaspreece.nameremember;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class VCardContactReaderTest {
+
+    private static VCardContactReader reader(String vcf) throws IOException {
+        return new VCardContactReader(new BufferedReader(new StringReader(vcf)));
+    }
+
+    @Test
+    public void readsNamesNotesAndCategories() throws IOException {
+        VCardContactReader reader = reader("BEGIN:VCARD\r\n"
+                + "VERSION:3.0\r\n"
+                + "N:Smith;Ann;;Dr;\r\n"
+                + "FN:Dr Ann Smith\r\n"
+                + "NOTE:Met at the bus stop\\, twice\\nLikes tea\r\n"
+                + "item1.CATEGORIES:work,book club,a\\,b\r\n"
+                + "END:VCARD\r\n");
+        Person ann = reader.read();
+        assertEquals("Ann", ann.getFirstName());
+        assertEquals("Smith", ann.getLastName());
+        assertEquals("Met at the bus stop, twice\nLikes tea", ann.getDescription());
+        assertEquals(Arrays.asList("a,b", "book club", "work"), ann.getKeywords());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void fallsBackToTheFormattedName() throws IOException {
+        Person bob = reader("\uFEFFBEGIN:VCARD\nFN:Bob van Dyke\nEND:VCARD\n").read();
+        assertEquals("Bob van", bob.getFirstName());
+        assertEquals("Dyke", bob.getLastName());
+    }
+
+    @Test
+    public void unfoldsContinuationLines() throws IOException {
+        Person cara = reader("BEGIN:VCARD\n"
+                + "N:Dunn;Cara\n"
+                + "NOTE:This note is long enough that the exporter\n"
+                + "  folded it\n"
+                + "\tonto three lines\n"
+                + "END:VCARD\n").read();
+        assertEquals("This note is long enough that the exporter folded itonto three lines", cara.getDescription());
+    }
+
+    @Test
+    public void decodesQuotedPrintableWithSoftLineBreaks() throws IOException {
+        Person dee = reader("BEGIN:VCARD\n"
+                + "VERSION:2.1\n"
+                + "N;CHARSET=UTF-8;ENCODING=QUOTED-PRINTABLE:M=C3=BCller;J=C3=BCrgen\n"
+                + "NOTE;ENCODING=QUOTED-PRINTABLE:Caf=C3=A9 regular, =\n"
+                + "sits by the window\n"
+                + "CATEGORIES;QUOTED-PRINTABLE:=C3=A9t=C3=A9,work\n"
+                + "END:VCARD\n").read();
+        assertEquals("J\u00fcrgen", dee.getFirstName());
+        assertEquals("M\u00fcller", dee.getLastName());
+        assertEquals("Caf\u00e9 regular, sits by the window", dee.getDescription());
+        assertEquals(Arrays.asList("work", "\u00e9t\u00e9"), dee.getKeywords());
+    }
+
+    @Test
+    public void readsEachCardInTurnAndIgnoresLinesOutsideCards() throws IOException {
+        VCardContactReader reader = reader("NOTE:stray\n"
+                + "BEGIN:VCARD\nN:One;A\nEND:VCARD\n"
+                + "BEGIN:VCARD\nN:Two;B\nEND:VCARD\n");
+        assertEquals("One", reader.read().getLastName());
+        assertEquals("Two", reader.read().getLastName());
+        assertNull(reader.read());
+    }
+}